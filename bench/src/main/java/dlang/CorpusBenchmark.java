@@ -0,0 +1,92 @@
+package dlang;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// runs every program CorpusGenerator wrote to a directory on the VM, timing scanning,
+// parsing, resolving, optimizing with compiling, and running separately, and checks
+// the output against the Interpreter's. ns/byte is for the front end, scanning through
+// resolving. Exits with 1 when any program's output differs
+class CorpusBenchmark {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: CorpusBenchmark <directory>");
+            System.exit(64);
+        }
+
+        List<Path> sources = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(args[0]), "*.dlang")) {
+            files.forEach(sources::add);
+        }
+        // smallest first, so the JIT has compiled the front end before the large sizes
+        sources.sort((a, b) -> Long.compare(size(a), size(b)));
+
+        System.out.printf("%-28s %14s %9s %9s %9s %9s %9s %8s%n",
+                "program", "bytes", "scan ms", "parse ms", "resolve", "compile", "run ms", "ns/byte");
+        boolean mismatch = false;
+        for (Path source : sources) {
+            mismatch |= !run(source);
+        }
+        if (mismatch) System.exit(1);
+    }
+
+    private static boolean run(Path source) throws IOException {
+        ErrorReporter errors = new ErrorReporter(System.err);
+        long bytes = Files.size(source);
+
+        long start = System.nanoTime();
+        List<Token> tokens;
+        try (Reader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            tokens = new Scanner(reader, errors).scanTokens();
+        }
+        long scanned = System.nanoTime();
+        List<Stmt> statements = new Parser(tokens, errors).parse();
+        long parsed = System.nanoTime();
+        new Resolver(errors).resolve(statements);
+        long resolved = System.nanoTime();
+        if (errors.hadError) {
+            System.out.printf("%-28s does not compile%n", source.getFileName());
+            return false;
+        }
+        Chunk script = new Compiler().compile(new Optimizer().optimize(statements));
+        long compiled = System.nanoTime();
+
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        Output output = new Output(new PrintStream(printed, false, StandardCharsets.UTF_8));
+        new VM(new Input(InputStream.nullInputStream()), output, errors).interpret(script);
+        output.flush();
+        long ran = System.nanoTime();
+
+        Path expected = Paths.get(source.toString().replaceFirst("\\.dlang$", ".expected"));
+        boolean same = !errors.hadRuntimeError && Files.exists(expected) &&
+                Arrays.equals(printed.toByteArray(), Files.readAllBytes(expected));
+
+        System.out.printf("%-28s %,14d %9.1f %9.1f %9.1f %9.1f %9.1f %8.1f %s%n",
+                source.getFileName(), bytes,
+                (scanned - start) / 1e6, (parsed - scanned) / 1e6, (resolved - parsed) / 1e6,
+                (compiled - resolved) / 1e6, (ran - compiled) / 1e6,
+                (double) (resolved - start) / bytes, same ? "OK" : "MISMATCH");
+        return same;
+    }
+
+    // sizes from the file names CorpusGenerator gives, kind-<size>.dlang
+    private static long size(Path source) {
+        String name = source.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(name.lastIndexOf('-') + 1, name.length() - ".dlang".length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package dlang;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+// writes a stress corpus of D programs of growing size, each next to the output the
+// tree-walking Interpreter gives for it, for CorpusBenchmark and regression runs:
+//
+//   CorpusGenerator <directory> [size in bytes...]
+//
+// functions-<size>.dlang declares thousands of functions and calls each of them,
+// nesting-<size>.dlang nests bodies 40 deep, arrays-<size>.dlang builds one long array
+// and folds it. loops-<size>.dlang stays small and runs one million iteration loop per
+// 64 KB of size instead, so its running time scales like the others' source does.
+// The expected output needs the whole program in memory, use -Xmx for the largest sizes
+class CorpusGenerator {
+    private static final long[] SIZES = {1L << 10, 1L << 20, 10L << 20};
+    private static final int NESTING = 40;
+
+    // a kind of program, written as a header, as many units as fit the size and a footer
+    private interface Program {
+        void header(Writer out) throws IOException;
+
+        void unit(Writer out, int index) throws IOException;
+
+        void footer(Writer out, int units) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: CorpusGenerator <directory> [size in bytes...]");
+            System.exit(64);
+        }
+        Path directory = Files.createDirectories(Paths.get(args[0]));
+        long[] sizes = SIZES;
+        if (args.length > 1) {
+            sizes = new long[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Long.parseLong(args[i]);
+            }
+        }
+
+        for (long size : sizes) {
+            generate(directory, "functions", size, FUNCTIONS, Long.MAX_VALUE);
+            generate(directory, "nesting", size, NESTING_SCOPES, Long.MAX_VALUE);
+            generate(directory, "arrays", size, ARRAYS, Long.MAX_VALUE);
+            generate(directory, "loops", size, LOOPS, Math.max(1, size >> 16));
+        }
+    }
+
+    private static void generate(Path directory, String kind, long size, Program program, long maxUnits)
+            throws IOException {
+        Path source = directory.resolve(kind + "-" + size + ".dlang");
+        Path expected = directory.resolve(kind + "-" + size + ".expected");
+
+        try (CountingWriter out = new CountingWriter(Files.newBufferedWriter(source, StandardCharsets.UTF_8))) {
+            program.header(out);
+            int units = 0;
+            while (out.count < size && units < maxUnits) {
+                program.unit(out, units++);
+            }
+            program.footer(out, units);
+        }
+
+        long start = System.nanoTime();
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(expected));
+             PrintStream printed = new PrintStream(file, false, StandardCharsets.UTF_8);
+             Reader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            ErrorReporter errors = new ErrorReporter(System.err);
+            Output output = new Output(printed);
+            List<Stmt> statements = DLang.compile(reader, new Resolver(errors), false, errors);
+            if (statements != null) {
+                new Interpreter(new Input(InputStream.nullInputStream()), output, errors).interpret(statements);
+            }
+            if (errors.status() != ErrorReporter.OK) {
+                throw new IllegalStateException(source + " does not run");
+            }
+        }
+        System.out.printf("%-28s %,14d bytes, expected output in %,d ms%n",
+                source.getFileName(), Files.size(source), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // a function per unit, called right after its declaration
+    private static final Program FUNCTIONS = new Program() {
+        @Override
+        public void header(Writer out) throws IOException {
+            out.write("var total := 0;\n");
+        }
+
+        @Override
+        public void unit(Writer out, int index) throws IOException {
+            out.write("var f" + index + " := func(x) is\n" +
+                    "  if x > " + index + " then\n" +
+                    "    return x - " + index + ";\n" +
+                    "  end;\n" +
+                    "  return x + " + index + " * 2;\n" +
+                    "end;\n" +
+                    "total := total + f" + index + "(" + index / 2 + ") - f" + index + "(" + (index + 3) + ");\n");
+            if (index % 1000 == 999) out.write("print total;\n");
+        }
+
+        @Override
+        public void footer(Writer out, int units) throws IOException {
+            out.write("print total;\n");
+        }
+    };
+
+    // if bodies nested NESTING deep, each a scope declaring a variable computed from the enclosing one
+    private static final Program NESTING_SCOPES = new Program() {
+        @Override
+        public void header(Writer out) throws IOException {
+            out.write("var total := 0;\n");
+        }
+
+        @Override
+        public void unit(Writer out, int index) throws IOException {
+            out.write("var v0 := " + index + ";\n");
+            for (int depth = 1; depth <= NESTING; depth++) {
+                indent(out, depth - 1);
+                out.write("if v" + (depth - 1) + " >= 0 then\n");
+                indent(out, depth);
+                out.write("var v" + depth + " := v" + (depth - 1) + " + " + depth % 7 + ";\n");
+            }
+            indent(out, NESTING);
+            out.write("total := total + v" + NESTING + " - v0;\n");
+            for (int depth = NESTING; depth >= 1; depth--) {
+                indent(out, depth - 1);
+                out.write("end;\n");
+            }
+            if (index % 100 == 99) out.write("print total;\n");
+        }
+
+        @Override
+        public void footer(Writer out, int units) throws IOException {
+            out.write("print total;\n");
+        }
+    };
+
+    // one long array literal, a hundred elements per unit, then summed and searched
+    private static final Program ARRAYS = new Program() {
+        @Override
+        public void header(Writer out) throws IOException {
+            out.write("var arr := [0");
+        }
+
+        @Override
+        public void unit(Writer out, int index) throws IOException {
+            StringBuilder elements = new StringBuilder(",\n");
+            long value = index;
+            for (int i = 0; i < 100; i++) {
+                // a linear congruential sequence keeps the values spread but reproducible
+                value = (value * 1103515245 + 12345) % 1000003;
+                if (i > 0) elements.append(", ");
+                elements.append(value);
+            }
+            out.write(elements.toString());
+        }
+
+        @Override
+        public void footer(Writer out, int units) throws IOException {
+            out.write("];\n" +
+                    "var sum := 0;\n" +
+                    "var m := arr[1];\n" +
+                    "for i in 1 .. " + (units * 100 + 2) + " loop\n" +
+                    "  sum := sum + arr[i];\n" +
+                    "  if arr[i] > m then\n" +
+                    "    m := arr[i];\n" +
+                    "  end;\n" +
+                    "end;\n" +
+                    "print sum;\n" +
+                    "print m;\n");
+        }
+    };
+
+    // a loop of one million iterations per unit
+    private static final Program LOOPS = new Program() {
+        @Override
+        public void header(Writer out) throws IOException {
+        }
+
+        @Override
+        public void unit(Writer out, int index) throws IOException {
+            out.write("var s" + index + " := 0;\n" +
+                    "for i in 0 .. 1000 loop\n" +
+                    "  for j in 0 .. 1000 loop\n" +
+                    "    s" + index + " := s" + index + " + i * " + (index % 5 + 1) + " - j;\n" +
+                    "  end;\n" +
+                    "end;\n" +
+                    "print s" + index + ";\n");
+        }
+
+        @Override
+        public void footer(Writer out, int units) throws IOException {
+        }
+    };
+
+    private static void indent(Writer out, int depth) throws IOException {
+        for (int i = 0; i < depth; i++) {
+            out.write("  ");
+        }
+    }
+
+    // the generated sources are ASCII, so characters written are bytes written
+    private static final class CountingWriter extends Writer {
+        private final BufferedWriter out;
+        long count = 0;
+
+        CountingWriter(BufferedWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void write(String text) throws IOException {
+            out.write(text);
+            count += text.length();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package dlang;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// each front end phase on its own, over generated programs of the given size in characters
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark {
+    @Param({"10000", "1000000"})
+    int size;
+
+    private String source;
+    private List<Token> tokens;
+    private List<Stmt> statements;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = Workloads.program(size);
+        ErrorReporter errors = Workloads.errors();
+        tokens = new Scanner(source, errors).scanTokens();
+        statements = new Parser(tokens, errors).parse();
+    }
+
+    @Benchmark
+    public List<Token> scanTokens() {
+        return new Scanner(source, Workloads.errors()).scanTokens();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens, Workloads.errors()).parse();
+    }
+
+    // resolving sets the same slots and depths on every pass, so the tree can be reused
+    @Benchmark
+    public List<Stmt> resolve() {
+        new Resolver(Workloads.errors()).resolve(statements);
+        return statements;
+    }
+}
@@ -0,0 +1,68 @@
+package dlang;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// the workloads run on already resolved trees, and end to end from source, on both engines.
+// Call counts stay on the function literals from one iteration to the next, so with the JIT
+// tier on, recursive workloads would soon time JVM bytecode instead of the engines
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Ddlang.jit.threshold=-1")
+public class InterpreterBenchmark {
+    @Param({"factorial", "fibonacci", "arrayMax", "stringConcat", "closures"})
+    String workload;
+
+    private String source;
+    private List<Stmt> statements;
+    private Chunk script;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = Workloads.source(workload);
+        statements = Workloads.resolved(source);
+        script = new Compiler().compile(statements);
+    }
+
+    @Benchmark
+    public void interpret() {
+        new Interpreter(input(), Workloads.output(), Workloads.errors()).interpret(statements);
+    }
+
+    @Benchmark
+    public void vm() {
+        new VM(input(), Workloads.output(), Workloads.errors()).interpret(script);
+    }
+
+    @Benchmark
+    public void interpretFromSource() {
+        new Interpreter(input(), Workloads.output(), Workloads.errors()).interpret(Workloads.resolved(source));
+    }
+
+    @Benchmark
+    public void vmFromSource() {
+        Chunk compiled = new Compiler().compile(Workloads.resolved(source));
+        new VM(input(), Workloads.output(), Workloads.errors()).interpret(compiled);
+    }
+
+    private static Input input() {
+        return new Input(InputStream.nullInputStream());
+    }
+}
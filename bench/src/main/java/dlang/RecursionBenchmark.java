@@ -0,0 +1,44 @@
+package dlang;
+
+import java.util.List;
+
+// times a recursive factorial on the tree-walking Interpreter, with the JIT tier off unless
+// -Ddlang.jit.threshold says otherwise, as the warmup would otherwise have fact compiled
+class RecursionBenchmark {
+    private static final String SOURCE =
+            "var fact := func(n) is\n" +
+            "  if n = 0 then\n" +
+            "    return 1;\n" +
+            "  end;\n" +
+            "  return n * fact(n - 1);\n" +
+            "end;\n" +
+            "var result := 0;\n" +
+            "for i in 0 .. 20000 loop\n" +
+            "  result := fact(20);\n" +
+            "end;\n";
+
+    private static final int WARMUP = 10;
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) {
+        // read once JitCompiler is loaded, which only happens on the first call
+        if (System.getProperty("dlang.jit.threshold") == null) {
+            System.setProperty("dlang.jit.threshold", "-1");
+        }
+        ErrorReporter errors = new ErrorReporter(System.err);
+        List<Stmt> statements = new Parser(new Scanner(SOURCE, errors), errors).parse();
+        new Resolver(errors).resolve(statements);
+
+        for (int i = 0; i < WARMUP; i++) {
+            new Interpreter().interpret(statements);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            new Interpreter().interpret(statements);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("fact(20) x 20000: %.2f ms/run%n", elapsed / 1e6 / RUNS);
+    }
+}
@@ -0,0 +1,48 @@
+package dlang;
+
+// times the Scanner over synthetic sources from 1 KB to 100 MB; the time per byte
+// should stay flat as the source grows, the largest sizes need a few GB of heap (-Xmx4g)
+class ScanningBenchmark {
+    private static final String BLOCK =
+            "for i in 0 .. n loop\n" +
+            "  var total := total + i * 2;\n" +
+            "  if total > 1000 then\n" +
+            "    print \"large\", total;\n" +
+            "  end;\n" +
+            "end;\n";
+
+    private static final long SMALLEST = 1L << 10;
+    private static final long LARGEST = 100L << 20;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        long largest = args.length > 0 ? Long.parseLong(args[0]) : LARGEST;
+
+        // the source is scanned once before timing so the JIT has compiled the scanner
+        scan(source(SMALLEST << 6), 20);
+
+        for (long size = SMALLEST; size <= largest; size *= 10) {
+            String source = source(size);
+            int runs = size < (1L << 20) ? RUNS * 20 : RUNS;
+            long elapsed = scan(source, runs) / runs;
+            System.out.printf("%,12d bytes: %10.3f ms, %6.2f ns/byte%n",
+                    source.length(), elapsed / 1e6, (double) elapsed / source.length());
+        }
+    }
+
+    private static String source(long size) {
+        StringBuilder source = new StringBuilder((int) size + BLOCK.length());
+        while (source.length() < size) {
+            source.append(BLOCK);
+        }
+        return source.toString();
+    }
+
+    private static long scan(String source, int runs) {
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            new Scanner(source, new ErrorReporter(System.err)).scanTokens();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,93 @@
+package dlang;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+// times hello world end to end, each run in a new JVM, once with the classes loaded from the
+// class path and once from an AppCDS archive created on the side, the way bin/dlang runs them
+class StartupBenchmark {
+    private static final int WARMUP = 3;
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("dlang-startup");
+        Path script = directory.resolve("hello.dlang");
+        Files.write(script, "print \"hello, world\";\n".getBytes());
+
+        // CDS only archives classes that come from jar files, so the interpreter classes are packed
+        // into one, from the classes directory on the class path or out of benchmarks.jar
+        Path jar = directory.resolve("dlang.jar");
+        Path classes = Paths.get(System.getProperty("java.class.path").split(File.pathSeparator)[0]);
+        if (Files.isDirectory(classes)) {
+            jar(classes, jar);
+        } else {
+            extract(classes, jar);
+        }
+        Path archive = directory.resolve("dlang.jsa");
+        run("-XX:ArchiveClassesAtExit=" + archive, jar, script);
+
+        System.out.printf("class path: %6.1f ms/run%n", time("-Xshare:auto", jar, script));
+        System.out.printf("AppCDS:     %6.1f ms/run%n", time("-XX:SharedArchiveFile=" + archive, jar, script));
+    }
+
+    private static double time(String option, Path jar, Path script) throws IOException, InterruptedException {
+        for (int i = 0; i < WARMUP; i++) {
+            run(option, jar, script);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            run(option, jar, script);
+        }
+        return (System.nanoTime() - start) / 1e6 / RUNS;
+    }
+
+    private static void run(String option, Path jar, Path script) throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<>(Arrays.asList(
+                java, option, "-cp", jar.toString(), "dlang.DLang", script.toString()));
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        if (process.waitFor() != 0) throw new IllegalStateException("dlang exited with " + process.exitValue());
+    }
+
+    private static void jar(Path classes, Path jar) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+             Stream<Path> files = Files.walk(classes)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                out.putNextEntry(new JarEntry(classes.relativize(file).toString().replace(File.separatorChar, '/')));
+                Files.copy(file, out);
+                out.closeEntry();
+            }
+        }
+    }
+
+    // copies the dlang package out of a jar, leaving the benchmark dependencies behind
+    private static void extract(Path from, Path jar) throws IOException {
+        try (JarFile in = new JarFile(from.toFile());
+             JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (JarEntry entry : Collections.list(in.entries())) {
+                if (entry.isDirectory() || !entry.getName().startsWith("dlang/")) continue;
+                out.putNextEntry(new JarEntry(entry.getName()));
+                try (InputStream classFile = in.getInputStream(entry)) {
+                    classFile.transferTo(out);
+                }
+                out.closeEntry();
+            }
+        }
+    }
+}
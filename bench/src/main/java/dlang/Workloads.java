@@ -0,0 +1,128 @@
+package dlang;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+// D programs the JMH benchmarks run, each printing a single line so the work can't be skipped
+final class Workloads {
+    static final String FACTORIAL =
+            "var fact := func(n) is\n" +
+            "  if n = 0 then\n" +
+            "    return 1;\n" +
+            "  end;\n" +
+            "  return n * fact(n - 1);\n" +
+            "end;\n" +
+            "var result := 0;\n" +
+            "for i in 0 .. 2000 loop\n" +
+            "  result := fact(20);\n" +
+            "end;\n" +
+            "print result;\n";
+
+    static final String FIBONACCI =
+            "var fib := func(n) is\n" +
+            "  if n < 2 then\n" +
+            "    return n;\n" +
+            "  end;\n" +
+            "  return fib(n - 1) + fib(n - 2);\n" +
+            "end;\n" +
+            "print fib(22);\n";
+
+    static final String ARRAY_MAX =
+            "var arr := [0];\n" +
+            "for i in 1 .. 20000 loop\n" +
+            "  arr := arr + [i * 7919 - i * 7919 / 10007 * 10007];\n" +
+            "end;\n" +
+            "var m := arr[1];\n" +
+            "for i in 1 .. 20001 loop\n" +
+            "  if arr[i] > m then\n" +
+            "    m := arr[i];\n" +
+            "  end;\n" +
+            "end;\n" +
+            "print m;\n";
+
+    static final String STRING_CONCAT =
+            "var s := \"\";\n" +
+            "for i in 0 .. 5000 loop\n" +
+            "  s := s + \"ab\";\n" +
+            "end;\n" +
+            "print s = s + \"\";\n";
+
+    static final String CLOSURES =
+            "var makeCounter := func(step) is\n" +
+            "  var count := 0;\n" +
+            "  return func is\n" +
+            "    var add := func(n) is\n" +
+            "      count := count + n;\n" +
+            "      return count;\n" +
+            "    end;\n" +
+            "    return add(step);\n" +
+            "  end;\n" +
+            "end;\n" +
+            "var total := 0;\n" +
+            "for i in 0 .. 200 loop\n" +
+            "  var counter := makeCounter(i);\n" +
+            "  for j in 0 .. 50 loop\n" +
+            "    total := total + counter();\n" +
+            "  end;\n" +
+            "end;\n" +
+            "print total;\n";
+
+    private Workloads() {
+    }
+
+    static String source(String name) {
+        switch (name) {
+            case "factorial":
+                return FACTORIAL;
+            case "fibonacci":
+                return FIBONACCI;
+            case "arrayMax":
+                return ARRAY_MAX;
+            case "stringConcat":
+                return STRING_CONCAT;
+            case "closures":
+                return CLOSURES;
+        }
+        throw new IllegalArgumentException("Unknown workload " + name);
+    }
+
+    // a program of about the given size in characters, made of function declarations,
+    // loops and nested bodies, for timing the front end
+    static String program(int size) {
+        StringBuilder source = new StringBuilder(size + 256);
+        for (int i = 0; source.length() < size; i++) {
+            source.append("var f").append(i).append(" := func(a, b) is\n")
+                    .append("  var total := a;\n")
+                    .append("  for k in 0 .. b loop\n")
+                    .append("    if k > 2 and total < 1000 then\n")
+                    .append("      total := total + k * ").append(i).append(" - (a / 2);\n")
+                    .append("    else\n")
+                    .append("      total := total - 1;\n")
+                    .append("    end;\n")
+                    .append("  end;\n")
+                    .append("  return total + f").append(i).append("_offset;\n")
+                    .append("end;\n")
+                    .append("var f").append(i).append("_offset := ").append(i).append(";\n")
+                    .append("print f").append(i).append("(").append(i).append(", 10);\n");
+        }
+        return source.toString();
+    }
+
+    static ErrorReporter errors() {
+        return new ErrorReporter(System.err);
+    }
+
+    // keeps what the benchmarked programs print off the console
+    static Output output() {
+        return new Output(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    static List<Stmt> resolved(String source) {
+        ErrorReporter errors = errors();
+        List<Stmt> statements = new Parser(new Scanner(source, errors), errors).parse();
+        new Resolver(errors).resolve(statements);
+        if (errors.hadError) throw new IllegalStateException("Workload does not compile");
+        return new Optimizer().optimize(statements);
+    }
+}
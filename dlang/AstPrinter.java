@@ -96,6 +96,11 @@ class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
         return parenthesize2("while", stmt.condition, stmt.body);
     }
 
+    @Override
+    public String visitForStmt(Stmt.For stmt) {
+        return parenthesize2("for", stmt.name, stmt.from, stmt.to, stmt.body);
+    }
+
     @Override
     public String visitReferenceStmt(Stmt.Reference stmt) {
         return stmt.reference.accept(this);
@@ -173,7 +178,7 @@ class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
 
     @Override
     public String visitArrayElementExpr(Expr.ArrayElement expr) {
-        return "(arrayElement " + expr.name + "[" + expr.index + "])";
+        return "(arrayElement " + expr.array.name + "[" + expr.index + "])";
     }
 
     @Override
@@ -0,0 +1,213 @@
+package dlang;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static dlang.AstWriter.*;
+
+// reads a program written by AstWriter back into syntax trees that are ready to run
+class AstReader {
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final TypeIndicator[] TYPES = TypeIndicator.values();
+
+    // thrown for bytes that are not a program AstWriter wrote
+    static class FormatError extends RuntimeException {
+        FormatError(String message) {
+            super(message);
+        }
+    }
+
+    private final ByteBuffer in;
+    private final List<String> strings = new ArrayList<>();
+    // global slots are numbered afresh for the program read, like Resolver does
+    private final Map<String, Integer> globals = new HashMap<>();
+
+    AstReader(ByteBuffer in) {
+        this.in = in;
+    }
+
+    List<Stmt> read() {
+        if (in.getInt() != MAGIC) throw new FormatError("Not a program.");
+        if (in.getInt() != VERSION) throw new FormatError("Written by another version.");
+        List<Stmt> statements = readStatements();
+        if (in.hasRemaining()) throw new FormatError("Trailing bytes.");
+        return statements;
+    }
+
+    private List<Stmt> readStatements() {
+        int size = readVarint();
+        List<Stmt> statements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            statements.add(readStmt());
+        }
+        return statements;
+    }
+
+    private List<Expr> readExpressions() {
+        int size = readVarint();
+        List<Expr> expressions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            expressions.add(readExpr());
+        }
+        return expressions;
+    }
+
+    private Stmt readStmt() {
+        int tag = readVarint();
+        switch (tag) {
+            case 0:
+                return null;
+            case BODY: {
+                Stmt.Body body = new Stmt.Body(readStatements());
+                body.slots = readVarint();
+                return body;
+            }
+            case ASSIGNMENT:
+                return new Stmt.Assignment(readExpr(), readExpr());
+            case IF:
+                return new Stmt.If(readExpr(), readStmt(), readStmt());
+            case PRINT:
+                return new Stmt.Print(readExpr());
+            case RETURN: {
+                Stmt.Return result = new Stmt.Return(readToken(), readExpr());
+                if (readVarint() != 0) result.tailCall = Resolver.call(result.value);
+                return result;
+            }
+            case VAR: {
+                int size = readVarint();
+                List<Stmt.Var.VarDecl> varDecls = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    Stmt.Var.VarDecl varDecl = new Stmt.Var.VarDecl(readToken(), readExpr());
+                    varDecl.slot = readVarint() - 1;
+                    if (varDecl.slot < 0) {
+                        varDecl.global = true;
+                        varDecl.slot = Resolver.globalSlot(globals, varDecl.name.lexeme);
+                    }
+                    varDecls.add(varDecl);
+                }
+                return new Stmt.Var(varDecls);
+            }
+            case WHILE:
+                return new Stmt.While(readExpr(), readStmt());
+            case FOR: {
+                Stmt.For loop = new Stmt.For(readToken(), readExpr(), readExpr(), readStmt());
+                loop.counterAssigned = readVarint() != 0;
+                return loop;
+            }
+            case REFERENCE_STMT:
+                return new Stmt.Reference(readExpr());
+        }
+        throw new FormatError("Unknown statement tag " + tag + ".");
+    }
+
+    private Expr readExpr() {
+        int tag = readVarint();
+        switch (tag) {
+            case 0:
+                return null;
+            case LOGICAL:
+                return new Expr.Logical(readExpr(), readToken(), readExpr());
+            case RELATION:
+                return new Expr.Relation(readExpr(), readToken(), readExpr());
+            case FACTOR:
+                return new Expr.Factor(readExpr(), readToken(), readExpr());
+            case TERM:
+                return new Expr.Term(readExpr(), readToken(), readExpr());
+            case UNARY: {
+                Expr left = readExpr();
+                Token operator = readToken();
+                int type = readVarint();
+                return new Expr.Unary(left, operator, type == 0 ? null : TYPES[type - 1]);
+            }
+            case REFERENCE:
+                return new Expr.Reference(readExpr(), readToken(), readExpressions(), readToken());
+            case GROUPING:
+                return new Expr.Grouping(readExpr());
+            case LITERAL:
+                return new Expr.Literal(readValue());
+            case FUNCTION_LITERAL: {
+                int size = readVarint();
+                List<Token> params = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    params.add(readToken());
+                }
+                Expr.FunctionLiteral function = new Expr.FunctionLiteral(params, readStatements());
+                function.slots = readVarint();
+                function.hasClosures = readVarint() != 0;
+                return function;
+            }
+            case VARIABLE:
+                return readVariable();
+            case ARRAY_ELEMENT: {
+                Expr array = readExpr();
+                if (!(array instanceof Expr.Variable)) throw new FormatError("Expected a variable.");
+                return new Expr.ArrayElement((Expr.Variable) array, readExpr());
+            }
+            case READ:
+                return new Expr.Read(readToken());
+        }
+        throw new FormatError("Unknown expression tag " + tag + ".");
+    }
+
+    private Expr.Variable readVariable() {
+        Expr.Variable variable = new Expr.Variable(readToken());
+        variable.depth = readVarint() - 1;
+        variable.slot = readVarint();
+        if (variable.depth < 0) variable.slot = Resolver.globalSlot(globals, variable.name.lexeme);
+        return variable;
+    }
+
+    private Token readToken() {
+        int type = readVarint();
+        if (type == 0) return null;
+        String lexeme = readString();
+        Object literal = readValue();
+        return new Token(TOKEN_TYPES[type - 1], lexeme, literal, readVarint());
+    }
+
+    private Object readValue() {
+        int tag = readVarint();
+        switch (tag) {
+            case NIL:
+                return null;
+            case FALSE:
+                return false;
+            case TRUE:
+                return true;
+            case INTEGER:
+                return in.getLong();
+            case REAL:
+                return Double.longBitsToDouble(in.getLong());
+            case STRING:
+                return readString();
+            case ARRAY:
+                return readExpressions();
+        }
+        throw new FormatError("Unknown value tag " + tag + ".");
+    }
+
+    private String readString() {
+        int index = readVarint();
+        if (index > 0) return strings.get(index - 1);
+
+        byte[] bytes = new byte[readVarint()];
+        in.get(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        strings.add(value);
+        return value;
+    }
+
+    private int readVarint() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new FormatError("Malformed integer.");
+    }
+}
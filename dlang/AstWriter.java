@@ -0,0 +1,337 @@
+package dlang;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// writes a resolved and optimized program in the binary form AstReader loads. Every node is
+// a tag followed by its fields, including what Resolver computed, so a loaded program can
+// run without going through the front end again. Strings are written once and referenced
+// by index afterwards
+class AstWriter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    static final int MAGIC = 0x444C4301;
+    // follows MAGIC; raise it whenever the format changes or Resolver or Optimizer change what
+    // they leave in a tree, a program written under another version is then read as missing
+    static final int VERSION = 1;
+
+    // node tags, 0 stands for a missing node
+    static final int LOGICAL = 1;
+    static final int RELATION = 2;
+    static final int FACTOR = 3;
+    static final int TERM = 4;
+    static final int UNARY = 5;
+    static final int REFERENCE = 6;
+    static final int GROUPING = 7;
+    static final int LITERAL = 8;
+    static final int FUNCTION_LITERAL = 9;
+    static final int VARIABLE = 10;
+    static final int ARRAY_ELEMENT = 11;
+    static final int READ = 12;
+
+    static final int BODY = 1;
+    static final int ASSIGNMENT = 2;
+    static final int IF = 3;
+    static final int PRINT = 4;
+    static final int RETURN = 5;
+    static final int VAR = 6;
+    static final int WHILE = 7;
+    static final int FOR = 8;
+    static final int REFERENCE_STMT = 9;
+
+    // literal value tags
+    static final int NIL = 0;
+    static final int FALSE = 1;
+    static final int TRUE = 2;
+    static final int INTEGER = 3;
+    static final int REAL = 4;
+    static final int STRING = 5;
+    static final int ARRAY = 6;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    byte[] write(List<Stmt> statements) {
+        writeInt(MAGIC);
+        writeInt(VERSION);
+        writeStatements(statements);
+        return out.toByteArray();
+    }
+
+    private void write(Stmt stmt) {
+        if (stmt == null) {
+            writeVarint(0);
+        } else {
+            stmt.accept(this);
+        }
+    }
+
+    private void write(Expr expr) {
+        if (expr == null) {
+            writeVarint(0);
+        } else {
+            expr.accept(this);
+        }
+    }
+
+    private void writeStatements(List<Stmt> statements) {
+        writeVarint(statements.size());
+        for (Stmt statement : statements) {
+            write(statement);
+        }
+    }
+
+    private void writeExpressions(List<Expr> expressions) {
+        writeVarint(expressions.size());
+        for (Expr expression : expressions) {
+            write(expression);
+        }
+    }
+
+    @Override
+    public Void visitBodyStmt(Stmt.Body stmt) {
+        writeVarint(BODY);
+        writeStatements(stmt.statements);
+        writeVarint(stmt.slots);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignmentStmt(Stmt.Assignment stmt) {
+        writeVarint(ASSIGNMENT);
+        write(stmt.left);
+        write(stmt.right);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        writeVarint(IF);
+        write(stmt.condition);
+        write(stmt.thenBranch);
+        write(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        writeVarint(PRINT);
+        write(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        writeVarint(RETURN);
+        writeToken(stmt.keyword);
+        write(stmt.value);
+        // the tail call is found again in the value when the statement is read
+        writeVarint(stmt.tailCall != null ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        writeVarint(VAR);
+        writeVarint(stmt.varDecls.size());
+        for (Stmt.Var.VarDecl varDecl : stmt.varDecls) {
+            writeToken(varDecl.name);
+            write(varDecl.initializer);
+            // like a global variable's, a global slot is numbered again when the program is read
+            writeVarint(varDecl.global ? 0 : varDecl.slot + 1);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        writeVarint(WHILE);
+        write(stmt.condition);
+        write(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        writeVarint(FOR);
+        writeToken(stmt.name);
+        write(stmt.from);
+        write(stmt.to);
+        write(stmt.body);
+        writeVarint(stmt.counterAssigned ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Void visitReferenceStmt(Stmt.Reference stmt) {
+        writeVarint(REFERENCE_STMT);
+        write(stmt.reference);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        return binary(LOGICAL, expr.left, expr.operator, expr.right);
+    }
+
+    @Override
+    public Void visitRelationExpr(Expr.Relation expr) {
+        return binary(RELATION, expr.left, expr.operator, expr.right);
+    }
+
+    @Override
+    public Void visitFactorExpr(Expr.Factor expr) {
+        return binary(FACTOR, expr.left, expr.operator, expr.right);
+    }
+
+    @Override
+    public Void visitTermExpr(Expr.Term expr) {
+        return binary(TERM, expr.left, expr.operator, expr.right);
+    }
+
+    private Void binary(int tag, Expr left, Token operator, Expr right) {
+        writeVarint(tag);
+        write(left);
+        writeToken(operator);
+        write(right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        writeVarint(UNARY);
+        write(expr.left);
+        writeToken(expr.operator);
+        writeVarint(expr.type == null ? 0 : expr.type.ordinal() + 1);
+        return null;
+    }
+
+    @Override
+    public Void visitReferenceExpr(Expr.Reference expr) {
+        writeVarint(REFERENCE);
+        write(expr.left);
+        writeToken(expr.operator);
+        writeExpressions(expr.exprList);
+        writeToken(expr.identifier);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        writeVarint(GROUPING);
+        write(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        writeVarint(LITERAL);
+        writeValue(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionLiteralExpr(Expr.FunctionLiteral expr) {
+        writeVarint(FUNCTION_LITERAL);
+        writeVarint(expr.params.size());
+        for (Token param : expr.params) {
+            writeToken(param);
+        }
+        writeStatements(expr.body);
+        writeVarint(expr.slots);
+        writeVarint(expr.hasClosures ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        writeVarint(VARIABLE);
+        writeToken(expr.name);
+        // a global slot is numbered again by name when the program is read
+        writeVarint(expr.depth + 1);
+        writeVarint(expr.depth < 0 ? 0 : expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitArrayElementExpr(Expr.ArrayElement expr) {
+        writeVarint(ARRAY_ELEMENT);
+        write(expr.array);
+        write(expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitReadExpr(Expr.Read expr) {
+        writeVarint(READ);
+        writeToken(expr.name);
+        return null;
+    }
+
+    private void writeToken(Token token) {
+        if (token == null) {
+            writeVarint(0);
+            return;
+        }
+        writeVarint(token.type.ordinal() + 1);
+        writeString(token.lexeme);
+        writeValue(token.literal);
+        writeVarint(token.line);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(Object value) {
+        if (value == null) {
+            writeVarint(NIL);
+        } else if (value instanceof Boolean) {
+            writeVarint((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Long) {
+            writeVarint(INTEGER);
+            writeLong((Long) value);
+        } else if (value instanceof Double) {
+            writeVarint(REAL);
+            writeLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof String) {
+            writeVarint(STRING);
+            writeString((String) value);
+        } else if (value instanceof List) {
+            writeVarint(ARRAY);
+            writeExpressions((List<Expr>) value);
+        } else {
+            throw new IllegalArgumentException("Unexpected literal " + value);
+        }
+    }
+
+    private void writeString(String value) {
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarint(index + 1);
+            return;
+        }
+        strings.put(value, strings.size());
+        writeVarint(0);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private void writeInt(int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            out.write(value >>> shift);
+        }
+    }
+
+    private void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+}
@@ -0,0 +1,403 @@
+package dlang;
+
+// executable form of a binary operator for the tree-walking Interpreter; it starts
+// uninitialized and rewrites itself into a node specialized for the operand types it sees.
+// Every specialization is a class of its own with the operation written out, so a call
+// site that only meets a few of them can inline them, and none has state of its own.
+// The current node is the one thing that changes when a tree runs. Every node is a singleton
+// whose guard accepts any operands, so runs on threads sharing the tree that race on it only
+// ever see a less specialized node, never one that computes a wrong result
+final class BinaryNode {
+    private abstract static class Node {
+        abstract Object execute(BinaryNode owner, Object left, Object right);
+    }
+
+    private final Token operator;
+    private Node node = UNINITIALIZED;
+
+    BinaryNode(Token operator) {
+        this.operator = operator;
+    }
+
+    Object execute(Object left, Object right) {
+        return node.execute(this, left, right);
+    }
+
+    // the first execution picks a specialization from the operand types
+    private static final Node UNINITIALIZED = new Node() {
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            owner.node = owner.specialize(left, right);
+            return owner.node.execute(owner, left, right);
+        }
+    };
+
+    private static final class LongAdd extends Node {
+        static final Node INSTANCE = new LongAdd();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return Operators.add(owner.operator, (long) left, (long) right);
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class LongSubtract extends Node {
+        static final Node INSTANCE = new LongSubtract();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return Operators.subtract(owner.operator, (long) left, (long) right);
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class LongMultiply extends Node {
+        static final Node INSTANCE = new LongMultiply();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return Operators.multiply(owner.operator, (long) left, (long) right);
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class LongDivide extends Node {
+        static final Node INSTANCE = new LongDivide();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return Operators.divide(owner.operator, (long) left, (long) right);
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class LongEqual extends Node {
+        static final Node INSTANCE = new LongEqual();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return (long) left == (long) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class LongNotEqual extends Node {
+        static final Node INSTANCE = new LongNotEqual();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return (long) left != (long) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class LongGreater extends Node {
+        static final Node INSTANCE = new LongGreater();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return (long) left > (long) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class LongGreaterEqual extends Node {
+        static final Node INSTANCE = new LongGreaterEqual();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return (long) left >= (long) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class LongLess extends Node {
+        static final Node INSTANCE = new LongLess();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return (long) left < (long) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class LongLessEqual extends Node {
+        static final Node INSTANCE = new LongLessEqual();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return (long) left <= (long) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class DoubleAdd extends Node {
+        static final Node INSTANCE = new DoubleAdd();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left + (double) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class DoubleSubtract extends Node {
+        static final Node INSTANCE = new DoubleSubtract();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left - (double) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class DoubleMultiply extends Node {
+        static final Node INSTANCE = new DoubleMultiply();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left * (double) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class DoubleDivide extends Node {
+        static final Node INSTANCE = new DoubleDivide();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left / (double) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    // same as Double.equals, which Operators.isEqual relies on
+    private static final class DoubleEqual extends Node {
+        static final Node INSTANCE = new DoubleEqual();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return Double.compare((double) left, (double) right) == 0;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class DoubleNotEqual extends Node {
+        static final Node INSTANCE = new DoubleNotEqual();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return Double.compare((double) left, (double) right) != 0;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class DoubleGreater extends Node {
+        static final Node INSTANCE = new DoubleGreater();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left > (double) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class DoubleGreaterEqual extends Node {
+        static final Node INSTANCE = new DoubleGreaterEqual();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left >= (double) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class DoubleLess extends Node {
+        static final Node INSTANCE = new DoubleLess();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left < (double) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class DoubleLessEqual extends Node {
+        static final Node INSTANCE = new DoubleLessEqual();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left <= (double) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class StringConcat extends Node {
+        static final Node INSTANCE = new StringConcat();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof String && right instanceof String) {
+                return (String) left + (String) right;
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class ArrayConcat extends Node {
+        static final Node INSTANCE = new ArrayConcat();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            if (left instanceof DArray && right instanceof DArray) {
+                return ((DArray) left).concat((DArray) right);
+            }
+            return owner.generalize(left, right);
+        }
+    }
+
+    private static final class Generic extends Node {
+        static final Node INSTANCE = new Generic();
+
+        @Override
+        Object execute(BinaryNode owner, Object left, Object right) {
+            Token operator = owner.operator;
+            switch (operator.type) {
+                case PLUS:
+                    return Operators.add(operator, left, right);
+                case MINUS:
+                    return Operators.subtract(operator, left, right);
+                case STAR:
+                    return Operators.multiply(operator, left, right);
+                case SLASH:
+                    return Operators.divide(operator, left, right);
+                case EQUAL:
+                    return Operators.isEqual(left, right);
+                case NOT_EQUAL:
+                    return !Operators.isEqual(left, right);
+                case GREATER:
+                    return Operators.greater(operator, left, right);
+                case GREATER_EQUAL:
+                    return Operators.greaterEqual(operator, left, right);
+                case LESS:
+                    return Operators.less(operator, left, right);
+                case LESS_EQUAL:
+                    return Operators.lessEqual(operator, left, right);
+            }
+            throw new IllegalStateException("Unexpected binary operator " + operator.type);
+        }
+    }
+
+    private Node specialize(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return longNode();
+        }
+        if (left instanceof Double && right instanceof Double) {
+            return doubleNode();
+        }
+        if (operator.type == TokenType.PLUS) {
+            if (left instanceof String && right instanceof String) return StringConcat.INSTANCE;
+            if (left instanceof DArray && right instanceof DArray) return ArrayConcat.INSTANCE;
+        }
+        return Generic.INSTANCE;
+    }
+
+    // a failed guard means the site is polymorphic, so it stays generic from now on
+    private Object generalize(Object left, Object right) {
+        node = Generic.INSTANCE;
+        return node.execute(this, left, right);
+    }
+
+    private Node longNode() {
+        switch (operator.type) {
+            case PLUS:
+                return LongAdd.INSTANCE;
+            case MINUS:
+                return LongSubtract.INSTANCE;
+            case STAR:
+                return LongMultiply.INSTANCE;
+            case SLASH:
+                return LongDivide.INSTANCE;
+            case EQUAL:
+                return LongEqual.INSTANCE;
+            case NOT_EQUAL:
+                return LongNotEqual.INSTANCE;
+            case GREATER:
+                return LongGreater.INSTANCE;
+            case GREATER_EQUAL:
+                return LongGreaterEqual.INSTANCE;
+            case LESS:
+                return LongLess.INSTANCE;
+            case LESS_EQUAL:
+                return LongLessEqual.INSTANCE;
+        }
+        throw new IllegalStateException("Unexpected binary operator " + operator.type);
+    }
+
+    private Node doubleNode() {
+        switch (operator.type) {
+            case PLUS:
+                return DoubleAdd.INSTANCE;
+            case MINUS:
+                return DoubleSubtract.INSTANCE;
+            case STAR:
+                return DoubleMultiply.INSTANCE;
+            case SLASH:
+                return DoubleDivide.INSTANCE;
+            case EQUAL:
+                return DoubleEqual.INSTANCE;
+            case NOT_EQUAL:
+                return DoubleNotEqual.INSTANCE;
+            case GREATER:
+                return DoubleGreater.INSTANCE;
+            case GREATER_EQUAL:
+                return DoubleGreaterEqual.INSTANCE;
+            case LESS:
+                return DoubleLess.INSTANCE;
+            case LESS_EQUAL:
+                return DoubleLessEqual.INSTANCE;
+        }
+        throw new IllegalStateException("Unexpected binary operator " + operator.type);
+    }
+}
@@ -0,0 +1,56 @@
+package dlang;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// compiled bytecode of the script or of a single function literal
+class Chunk {
+    // the function literal this chunk was compiled from, null for the script
+    final Expr.FunctionLiteral declaration;
+    final List<Token> params;
+    final int slots;
+    final boolean hasClosures;
+
+    int[] code = new int[64];
+    int count = 0;
+
+    Object[] constants = new Object[16];
+    int constantCount = 0;
+    private Map<Object, Integer> constantIndex = new IdentityHashMap<>();
+
+    Chunk(Expr.FunctionLiteral declaration) {
+        this.declaration = declaration;
+        this.params = declaration == null ? Collections.emptyList() : declaration.params;
+        this.slots = declaration == null ? 0 : declaration.slots;
+        this.hasClosures = declaration != null && declaration.hasClosures;
+    }
+
+    void write(int value) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+        }
+        code[count++] = value;
+    }
+
+    int addConstant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index != null) return index;
+
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        constantIndex.put(value, constantCount);
+        return constantCount++;
+    }
+
+    // drop the spare capacity once compilation is done
+    void seal() {
+        code = Arrays.copyOf(code, count);
+        constants = Arrays.copyOf(constants, constantCount);
+        constantIndex = null;
+    }
+}
@@ -0,0 +1,346 @@
+package dlang;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// minimal writer for the class files JitCompiler generates; it targets version 49,
+// which the JVM still verifies by type inference, so no stack map frames are needed
+final class ClassFile {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ICONST_0 = 0x03;
+    static final int LCONST_0 = 0x09;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC2_W = 0x14;
+    static final int LLOAD = 0x16;
+    static final int ALOAD = 0x19;
+    static final int LSTORE = 0x37;
+    static final int POP2 = 0x58;
+    static final int IAND = 0x7e;
+    static final int IOR = 0x80;
+    static final int IXOR = 0x82;
+    static final int LCMP = 0x94;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f;
+    static final int IF_ICMPNE = 0xa0;
+    static final int IF_ACMPEQ = 0xa5;
+    static final int GOTO = 0xa7;
+    static final int LRETURN = 0xad;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int ATHROW = 0xbf;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    // thrown when a method does not fit the limits this writer handles
+    static final class TooLarge extends RuntimeException {
+        TooLarge() {
+            super(null, null, false, false);
+        }
+    }
+
+    final String name;
+    private final String superName;
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+    private final List<Code> methods = new ArrayList<>();
+
+    ClassFile(String name, String superName) {
+        this.name = name;
+        this.superName = superName;
+    }
+
+    Code method(int access, String name, String descriptor) {
+        Code code = new Code(access, utf8(name), utf8(descriptor), 1 + size(descriptor, false));
+        methods.add(code);
+        return code;
+    }
+
+    byte[] toByteArray() {
+        int thisClass = classRef(name);
+        int superClass = classRef(superName);
+        int codeName = utf8("Code");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (Code method : methods) {
+                method.write(out, codeName);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private int utf8(String value) {
+        Integer index = poolIndex.get("U" + value);
+        if (index != null) return index;
+        try {
+            poolOut.writeByte(CONSTANT_UTF8);
+            poolOut.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return addEntry("U" + value, 1);
+    }
+
+    private int classRef(String className) {
+        Integer index = poolIndex.get("C" + className);
+        if (index != null) return index;
+        int nameIndex = utf8(className);
+        write(CONSTANT_CLASS, nameIndex);
+        return addEntry("C" + className, 1);
+    }
+
+    private int methodRef(String owner, String name, String descriptor) {
+        String key = "M" + owner + "." + name + descriptor;
+        Integer index = poolIndex.get(key);
+        if (index != null) return index;
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        write(CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+        int nameAndType = addEntry("N" + name + descriptor, 1);
+        write(CONSTANT_METHODREF, ownerIndex, nameAndType);
+        return addEntry(key, 1);
+    }
+
+    private int longConstant(long value) {
+        Integer index = poolIndex.get("J" + value);
+        if (index != null) return index;
+        try {
+            poolOut.writeByte(CONSTANT_LONG);
+            poolOut.writeLong(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        // long constants take two entries
+        return addEntry("J" + value, 2);
+    }
+
+    private void write(int tag, int... indexes) {
+        try {
+            poolOut.writeByte(tag);
+            for (int index : indexes) {
+                poolOut.writeShort(index);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int addEntry(String key, int width) {
+        if (poolCount + width > 0xFFFF) throw new TooLarge();
+        int index = poolCount;
+        poolCount += width;
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    // stack or local variable slots taken by the arguments, or by the result, of a method descriptor
+    private static int size(String descriptor, boolean result) {
+        int size = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            size += width(descriptor.charAt(i));
+            while (descriptor.charAt(i) == '[') i++;
+            if (descriptor.charAt(i) == 'L') i = descriptor.indexOf(';', i);
+            i++;
+        }
+        if (!result) return size;
+        return descriptor.charAt(i + 1) == 'V' ? 0 : width(descriptor.charAt(i + 1));
+    }
+
+    private static int width(char type) {
+        return type == 'J' || type == 'D' ? 2 : 1;
+    }
+
+    final class Label {
+        private int position = -1;
+        // operand stack depth on entry, known once a jump to the label was written
+        private int stack = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    // code of a single method; tracks the operand stack depth and the locals it touches
+    final class Code {
+        private final int access;
+        private final int nameIndex;
+        private final int descriptorIndex;
+        private byte[] code = new byte[256];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+        private final List<Label> labels = new ArrayList<>();
+
+        private Code(int access, int nameIndex, int descriptorIndex, int maxLocals) {
+            this.access = access;
+            this.nameIndex = nameIndex;
+            this.descriptorIndex = descriptorIndex;
+            this.maxLocals = maxLocals;
+        }
+
+        void op(int opcode, int stackChange) {
+            writeByte(opcode);
+            adjust(stackChange);
+        }
+
+        void aload(int index) {
+            local(ALOAD, index, 1);
+            adjust(1);
+        }
+
+        void lload(int index) {
+            local(LLOAD, index, 2);
+            adjust(2);
+        }
+
+        void lstore(int index) {
+            local(LSTORE, index, 2);
+            adjust(-2);
+        }
+
+        void iconst(int value) {
+            if (value >= -1 && value <= 5) {
+                writeByte(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                writeByte(BIPUSH);
+                writeByte(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                writeByte(SIPUSH);
+                writeShort(value);
+            } else {
+                throw new TooLarge();
+            }
+            adjust(1);
+        }
+
+        void lconst(long value) {
+            if (value == 0 || value == 1) {
+                writeByte(LCONST_0 + (int) value);
+            } else {
+                writeByte(LDC2_W);
+                writeShort(longConstant(value));
+            }
+            adjust(2);
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            writeByte(opcode);
+            writeShort(methodRef(owner, name, descriptor));
+            int receiver = opcode == INVOKESTATIC ? 0 : 1;
+            adjust(size(descriptor, true) - size(descriptor, false) - receiver);
+        }
+
+        Label label() {
+            Label label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        void jump(int opcode, Label label) {
+            label.jumps.add(length);
+            writeByte(opcode);
+            writeShort(0);
+            if (opcode == GOTO) {
+                label.stack = stack;
+            } else if (opcode >= IF_ICMPEQ) {
+                adjust(-2);
+                label.stack = stack;
+            } else {
+                adjust(-1);
+                label.stack = stack;
+            }
+        }
+
+        void place(Label label) {
+            label.position = length;
+            if (label.stack >= 0) stack = label.stack;
+        }
+
+        private void local(int opcode, int index, int width) {
+            if (index > 0xFF - width) throw new TooLarge();
+            writeByte(opcode);
+            writeByte(index);
+            maxLocals = Math.max(maxLocals, index + width);
+        }
+
+        private void adjust(int change) {
+            stack += change;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void writeByte(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = (byte) value;
+        }
+
+        private void writeShort(int value) {
+            writeByte(value >> 8);
+            writeByte(value);
+        }
+
+        private void write(DataOutputStream out, int codeName) throws IOException {
+            if (length > 0x7FFF) throw new TooLarge();
+            for (Label label : labels) {
+                for (int jump : label.jumps) {
+                    int offset = label.position - jump;
+                    code[jump + 1] = (byte) (offset >> 8);
+                    code[jump + 2] = (byte) offset;
+                }
+            }
+
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(length);
+            out.write(code, 0, length);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+    }
+}
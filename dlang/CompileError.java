@@ -0,0 +1,8 @@
+package dlang;
+
+// thrown by DLangEngine.compile for a source with errors, the message lists all of them
+public class CompileError extends RuntimeException {
+  CompileError(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,70 @@
+package dlang;
+
+// base class of the JVM classes JitCompiler generates for hot function literals; generated code
+// lives in its own class loader, so everything it needs from the interpreter goes through here
+public abstract class CompiledFunction {
+    // thrown when compiled code meets a value it was not compiled for
+    static final class Deoptimize extends RuntimeException {
+        private static final Deoptimize INSTANCE = new Deoptimize();
+
+        private Deoptimize() {
+            super(null, null, false, false);
+        }
+    }
+
+    // operator and variable tokens used in error messages, indexed by the generated code
+    Token[] tokens;
+
+    protected CompiledFunction() {
+    }
+
+    // runs the function with the arguments bound in the first slots of frame
+    protected abstract Object call(Object self, Object frame);
+
+    protected final long argument(Object frame, int slot) {
+        Object value = ((Environment) frame).getAt(0, slot);
+        if (value instanceof Long) return (Long) value;
+        throw Deoptimize.INSTANCE;
+    }
+
+    // a variable declared outside the function, distance -1 meaning a global one
+    protected final Object variable(Object self, int distance, int slot, int name) {
+        Environment closure = ((DFunction) self).closure;
+        if (distance >= 0) return closure.getAt(distance, slot);
+
+        while (closure.enclosing != null) {
+            closure = closure.enclosing;
+        }
+        return closure.get(slot, tokens[name]);
+    }
+
+    protected final long integer(Object self, int distance, int slot, int name) {
+        Object value = variable(self, distance, slot, name);
+        if (value instanceof Long) return (Long) value;
+        throw Deoptimize.INSTANCE;
+    }
+
+    protected final long add(long left, long right, int operator) {
+        return Operators.add(tokens[operator], left, right);
+    }
+
+    protected final long subtract(long left, long right, int operator) {
+        return Operators.subtract(tokens[operator], left, right);
+    }
+
+    protected final long multiply(long left, long right, int operator) {
+        return Operators.multiply(tokens[operator], left, right);
+    }
+
+    protected final long divide(long left, long right, int operator) {
+        return Operators.divide(tokens[operator], left, right);
+    }
+
+    protected final long negate(long value, int operator) {
+        return Operators.negate(tokens[operator], value);
+    }
+
+    protected final RuntimeException deoptimize() {
+        return Deoptimize.INSTANCE;
+    }
+}
@@ -0,0 +1,62 @@
+package dlang;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// a program compiled by DLangEngine. Runs only change what JitCompiler keeps on the function
+// literals, which is safe to share, so it can run again and again, on any number of threads at
+// once, each run with its own globals and streams
+public final class CompiledProgram {
+    private final Chunk script;
+    // global slots Resolver gave the program's names, only read once the program is compiled
+    private final Map<String, Integer> globals;
+
+    CompiledProgram(Chunk script, Map<String, Integer> globals) {
+        this.script = script;
+        this.globals = globals;
+    }
+
+    public int run(InputStream in, PrintStream out, PrintStream err) {
+        return run(Collections.emptyMap(), in, out, err);
+    }
+
+    // runs the program with the bindings defined as globals first and returns the status
+    // DLang would exit with, 0 or 70 for a runtime error that was reported on err. A binding
+    // the program has no name for could never be read, so it is left out
+    public int run(Map<String, ?> bindings, InputStream in, PrintStream out, PrintStream err) {
+        ErrorReporter errors = new ErrorReporter(err);
+        VM vm = new VM(new Input(in), new Output(out), errors);
+        for (Map.Entry<String, ?> binding : bindings.entrySet()) {
+            Integer slot = globals.get(binding.getKey());
+            if (slot != null) vm.globals.defineGlobal(slot, value(binding.getValue()));
+        }
+        vm.interpret(script);
+        return errors.status();
+    }
+
+    // the dlang value for a Java one: integers become int, floating point numbers real,
+    // and lists arrays
+    private static Object value(Object value) {
+        if (value == null || value instanceof Long || value instanceof Double
+                || value instanceof String || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof List) {
+            Object[] elements = ((List<?>) value).toArray();
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = value(elements[i]);
+            }
+            return DArray.of(elements, 0, elements.length);
+        }
+        throw new IllegalArgumentException("No dlang value for " + value.getClass().getName());
+    }
+}
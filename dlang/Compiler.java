@@ -0,0 +1,368 @@
+package dlang;
+
+import java.util.List;
+
+import static dlang.TokenType.LEFT_PAREN;
+
+// turns the resolved syntax tree into bytecode for the VM
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private Chunk chunk;
+
+    Compiler() {
+    }
+
+    Chunk compile(List<Stmt> statements) {
+        return compileChunk(null, statements);
+    }
+
+    private Chunk compileChunk(Expr.FunctionLiteral declaration, List<Stmt> statements) {
+        Chunk enclosing = chunk;
+        chunk = new Chunk(declaration);
+        try {
+            for (Stmt statement : statements) {
+                compile(statement);
+            }
+            emit(OpCode.NIL);
+            emit(OpCode.RETURN);
+            chunk.seal();
+            return chunk;
+        } finally {
+            chunk = enclosing;
+        }
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitBodyStmt(Stmt.Body stmt) {
+        emit(OpCode.ENTER_SCOPE, stmt.slots);
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        emit(OpCode.EXIT_SCOPE);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignmentStmt(Stmt.Assignment stmt) {
+        compile(stmt.right);
+
+        if (stmt.left instanceof Expr.Variable) {
+            Expr.Variable variable = (Expr.Variable) stmt.left;
+            if (variable.depth >= 0) {
+                emit(OpCode.SET_LOCAL, variable.depth, variable.slot);
+            } else {
+                emit(OpCode.SET_GLOBAL, variable.slot, constant(variable.name));
+            }
+        } else if (stmt.left instanceof Expr.ArrayElement) {
+            Expr.ArrayElement element = (Expr.ArrayElement) stmt.left;
+            Expr.Variable array = element.array;
+            compile(element.index);
+            if (array.depth >= 0) {
+                emit(OpCode.SET_ELEMENT_LOCAL, array.depth, array.slot, constant(array.name));
+            } else {
+                emit(OpCode.SET_ELEMENT_GLOBAL, array.slot, constant(array.name));
+            }
+        } else {
+            emit(OpCode.POP);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+        int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+        compile(stmt.thenBranch);
+
+        if (stmt.elseBranch != null) {
+            int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            compile(stmt.elseBranch);
+            patchJump(endJump);
+        } else {
+            patchJump(elseJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall != null) {
+            compile(stmt.tailCall.left);
+            for (Expr argument : stmt.tailCall.exprList) {
+                compile(argument);
+            }
+            emit(OpCode.TAIL_CALL, stmt.tailCall.exprList.size(), constant(stmt.tailCall.operator));
+            return null;
+        }
+
+        if (stmt.value != null) {
+            compile(stmt.value);
+        } else {
+            emit(OpCode.NIL);
+        }
+        emit(OpCode.RETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        // a declaration without initializer takes the last value of the statement
+        emit(OpCode.NIL);
+        for (Stmt.Var.VarDecl varDecl : stmt.varDecls) {
+            if (varDecl.initializer != null) {
+                emit(OpCode.POP);
+                compile(varDecl.initializer);
+            }
+            if (varDecl.global) {
+                emit(OpCode.DEFINE_GLOBAL, varDecl.slot);
+            } else {
+                emit(OpCode.DEFINE_LOCAL, varDecl.slot);
+            }
+        }
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = chunk.count;
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        compile(stmt.body);
+        emit(OpCode.JUMP, loopStart);
+        patchJump(exitJump);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        // the loop variable takes slot 0 of the loop's scope, the upper bound slot 1
+        compile(stmt.from);
+        compile(stmt.to);
+        emit(OpCode.ENTER_SCOPE, 2);
+        int exitJump = emitJump(OpCode.FOR_PREP, constant(stmt.name));
+        int bodyStart = chunk.count;
+        compile(stmt.body);
+        emit(OpCode.FOR_NEXT, constant(stmt.name), bodyStart);
+        patchJump(exitJump);
+        emit(OpCode.EXIT_SCOPE);
+        return null;
+    }
+
+    @Override
+    public Void visitReferenceStmt(Stmt.Reference stmt) {
+        compile(stmt.reference);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value instanceof List) {
+            List<Expr> values = (List) expr.value;
+            for (Expr value : values) {
+                compile(value);
+            }
+            emit(OpCode.ARRAY, values.size());
+        } else if (expr.value == null) {
+            emit(OpCode.NIL);
+        } else if (expr.value instanceof Boolean) {
+            emit((Boolean) expr.value ? OpCode.TRUE : OpCode.FALSE);
+        } else {
+            emit(OpCode.CONSTANT, constant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionLiteralExpr(Expr.FunctionLiteral expr) {
+        Chunk function = compileChunk(expr, expr.body);
+        emit(OpCode.CLOSURE, constant(function));
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        compile(expr.right);
+
+        switch (expr.operator.type) {
+            case OR:
+                emit(OpCode.OR);
+                break;
+            case AND:
+                emit(OpCode.AND);
+                break;
+            case XOR:
+                emit(OpCode.XOR);
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitRelationExpr(Expr.Relation expr) {
+        compile(expr.left);
+        compile(expr.right);
+
+        switch (expr.operator.type) {
+            case NOT_EQUAL:
+                emit(OpCode.NOT_EQUAL);
+                break;
+            case EQUAL:
+                emit(OpCode.EQUAL);
+                break;
+            case GREATER:
+                emit(OpCode.GREATER, constant(expr.operator));
+                break;
+            case GREATER_EQUAL:
+                emit(OpCode.GREATER_EQUAL, constant(expr.operator));
+                break;
+            case LESS:
+                emit(OpCode.LESS, constant(expr.operator));
+                break;
+            case LESS_EQUAL:
+                emit(OpCode.LESS_EQUAL, constant(expr.operator));
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitFactorExpr(Expr.Factor expr) {
+        compile(expr.left);
+        compile(expr.right);
+
+        switch (expr.operator.type) {
+            case MINUS:
+                emit(OpCode.SUBTRACT, constant(expr.operator));
+                break;
+            case PLUS:
+                emit(OpCode.ADD, constant(expr.operator));
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitTermExpr(Expr.Term expr) {
+        compile(expr.left);
+        compile(expr.right);
+
+        switch (expr.operator.type) {
+            case SLASH:
+                emit(OpCode.DIVIDE, constant(expr.operator));
+                break;
+            case STAR:
+                emit(OpCode.MULTIPLY, constant(expr.operator));
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.left);
+        if (expr.operator == null) return null;
+
+        switch (expr.operator.type) {
+            case IS:
+                emit(OpCode.IS, expr.type.ordinal());
+                break;
+            case PLUS:
+            case MINUS:
+                emit(OpCode.NEGATE, constant(expr.operator));
+                break;
+            case NOT:
+                emit(OpCode.NOT, constant(expr.operator));
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitReferenceExpr(Expr.Reference expr) {
+        compile(expr.left);
+
+        if (expr.operator.type == LEFT_PAREN) {
+            for (Expr argument : expr.exprList) {
+                compile(argument);
+            }
+            emit(OpCode.CALL, expr.exprList.size(), constant(expr.operator));
+        } else {
+            //TODO
+            emit(OpCode.POP);
+            emit(OpCode.NIL);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth >= 0) {
+            emit(OpCode.GET_LOCAL, expr.depth, expr.slot);
+        } else {
+            emit(OpCode.GET_GLOBAL, expr.slot, constant(expr.name));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitArrayElementExpr(Expr.ArrayElement expr) {
+        Expr.Variable array = expr.array;
+        compile(expr.index);
+        if (array.depth >= 0) {
+            emit(OpCode.GET_ELEMENT_LOCAL, array.depth, array.slot, constant(array.name));
+        } else {
+            emit(OpCode.GET_ELEMENT_GLOBAL, array.slot, constant(array.name));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitReadExpr(Expr.Read expr) {
+        emit(OpCode.READ, constant(expr.name));
+        return null;
+    }
+
+    private int constant(Object value) {
+        return chunk.addConstant(value);
+    }
+
+    private void emit(int... code) {
+        for (int value : code) {
+            chunk.write(value);
+        }
+    }
+
+    private int emitJump(int... instruction) {
+        emit(instruction);
+        emit(-1);
+        return chunk.count - 1;
+    }
+
+    private void patchJump(int offset) {
+        chunk.code[offset] = chunk.count;
+    }
+}
@@ -0,0 +1,8 @@
+package dlang;
+
+// how a statement finished, anything but NORMAL unwinds the enclosing statements
+enum Completion {
+    NORMAL, RETURN,
+    // return of a call in tail position, made by the caller once the frame is unwound
+    TAIL_CALL
+}
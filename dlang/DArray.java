@@ -0,0 +1,219 @@
+package dlang;
+
+import java.util.Arrays;
+
+// array value, numbers are stored unboxed and storage is shared until written
+final class DArray {
+    private static final int INTEGERS = 0;
+    private static final int REALS = 1;
+    private static final int OBJECTS = 2;
+
+    private static final class Storage {
+        // exactly one of these is set, depending on the kind of the elements
+        long[] integers;
+        double[] reals;
+        Object[] objects;
+        // elements claimed by the longest array viewing this storage
+        int used;
+        // arrays viewing this storage, an array writes in place only while it is the only one
+        int views = 1;
+
+        Storage(int kind, int capacity, int used) {
+            switch (kind) {
+                case INTEGERS:
+                    integers = new long[capacity];
+                    break;
+                case REALS:
+                    reals = new double[capacity];
+                    break;
+                default:
+                    objects = new Object[capacity];
+            }
+            this.used = used;
+        }
+
+        int kind() {
+            if (integers != null) return INTEGERS;
+            if (reals != null) return REALS;
+            return OBJECTS;
+        }
+
+        int capacity() {
+            if (integers != null) return integers.length;
+            if (reals != null) return reals.length;
+            return objects.length;
+        }
+    }
+
+    private Storage storage;
+    private final int length;
+
+    private DArray(Storage storage, int length) {
+        this.storage = storage;
+        this.length = length;
+    }
+
+    static DArray of(Object[] values, int from, int to) {
+        int length = to - from;
+        int kind = length == 0 ? OBJECTS : kindOf(values[from]);
+        for (int i = from + 1; i < to && kind != OBJECTS; i++) {
+            if (kindOf(values[i]) != kind) kind = OBJECTS;
+        }
+
+        Storage storage = new Storage(kind, length, length);
+        for (int i = 0; i < length; i++) {
+            put(storage, i, values[from + i]);
+        }
+        return new DArray(storage, length);
+    }
+
+    private static int kindOf(Object value) {
+        if (value instanceof Long) return INTEGERS;
+        if (value instanceof Double) return REALS;
+        return OBJECTS;
+    }
+
+    int size() {
+        return length;
+    }
+
+    Object get(int index) {
+        Storage storage = this.storage;
+        if (storage.integers != null) return storage.integers[index];
+        if (storage.reals != null) return storage.reals[index];
+        return storage.objects[index];
+    }
+
+    void set(int index, Object value) {
+        int kind = storage.kind();
+        if (kind != OBJECTS && kindOf(value) != kind) {
+            moveTo(copy(OBJECTS, length));
+        } else if (storage.views > 1) {
+            moveTo(copy(kind, length));
+        }
+        put(storage, index, value);
+    }
+
+    DArray concat(DArray other) {
+        int size = length + other.length;
+        // an empty operand takes on the kind of the other, so building an array up from []
+        // keeps its numbers unboxed
+        int kind;
+        if (length == 0) {
+            kind = other.storage.kind();
+        } else if (other.length == 0 || storage.kind() == other.storage.kind()) {
+            kind = storage.kind();
+        } else {
+            kind = OBJECTS;
+        }
+
+        // this is the longest view of its storage, so the other array can go right behind it
+        Storage target = storage;
+        if (target.used != length || target.kind() != kind || target.capacity() < size) {
+            target = copy(kind, size + (size >> 1));
+        } else {
+            target.views++;
+        }
+
+        Storage source = other.storage;
+        if (source.kind() != kind) {
+            for (int i = 0; i < other.length; i++) {
+                put(target, length + i, other.get(i));
+            }
+        } else if (kind == INTEGERS) {
+            System.arraycopy(source.integers, 0, target.integers, length, other.length);
+        } else if (kind == REALS) {
+            System.arraycopy(source.reals, 0, target.reals, length, other.length);
+        } else {
+            System.arraycopy(source.objects, 0, target.objects, length, other.length);
+        }
+        target.used = size;
+        return new DArray(target, size);
+    }
+
+    private static void put(Storage storage, int index, Object value) {
+        if (storage.integers != null) {
+            storage.integers[index] = (Long) value;
+        } else if (storage.reals != null) {
+            storage.reals[index] = (Double) value;
+        } else {
+            storage.objects[index] = value;
+        }
+    }
+
+    // leaves the current storage to the arrays still viewing it
+    private void moveTo(Storage copy) {
+        storage.views--;
+        storage = copy;
+    }
+
+    // fresh storage of the given kind holding this array's elements
+    private Storage copy(int kind, int capacity) {
+        if (storage.kind() != kind) {
+            // boxes the elements, or takes on a kind while this array is empty
+            Storage copy = new Storage(kind, capacity, length);
+            for (int i = 0; i < length; i++) {
+                put(copy, i, get(i));
+            }
+            return copy;
+        }
+
+        Storage copy = new Storage(kind, 0, length);
+        if (kind == INTEGERS) {
+            copy.integers = Arrays.copyOf(storage.integers, capacity);
+        } else if (kind == REALS) {
+            copy.reals = Arrays.copyOf(storage.reals, capacity);
+        } else {
+            copy.objects = Arrays.copyOf(storage.objects, capacity);
+        }
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) return true;
+        if (!(object instanceof DArray)) return false;
+
+        DArray other = (DArray) object;
+        if (length != other.length) return false;
+
+        if (storage.integers != null && other.storage.integers != null) {
+            for (int i = 0; i < length; i++) {
+                if (storage.integers[i] != other.storage.integers[i]) return false;
+            }
+            return true;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (!Operators.isEqual(get(i), other.get(i))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            Object element = get(i);
+            int elementHash;
+            if (element instanceof Number) {
+                // integers and reals with the same value are equal
+                elementHash = Double.hashCode(((Number) element).doubleValue());
+            } else {
+                elementHash = element == null ? 0 : element.hashCode();
+            }
+            hash = 31 * hash + elementHash;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < length; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(get(i));
+        }
+        return builder.append("]").toString();
+    }
+}
@@ -0,0 +1,41 @@
+package dlang;
+
+import java.util.List;
+
+// function value, runs in a frame whose enclosing environment is the one it was created in
+final class DFunction {
+    // body for the tree-walking Interpreter, chunk for the VM
+    final List<Stmt> body;
+    final Chunk chunk;
+    final Expr.FunctionLiteral declaration;
+    final Environment closure;
+    final int arity;
+    final int slots;
+    // no closure can capture a frame of this function, so a self tail call may reuse it
+    final boolean reusesFrame;
+
+    DFunction(Expr.FunctionLiteral declaration, Environment closure) {
+        this.body = declaration.body;
+        this.chunk = null;
+        this.declaration = declaration;
+        this.closure = closure;
+        this.arity = declaration.params.size();
+        this.slots = declaration.slots;
+        this.reusesFrame = !declaration.hasClosures;
+    }
+
+    DFunction(Chunk chunk, Environment closure) {
+        this.body = null;
+        this.chunk = chunk;
+        this.declaration = chunk.declaration;
+        this.closure = closure;
+        this.arity = chunk.params.size();
+        this.slots = chunk.slots;
+        this.reusesFrame = !chunk.hasClosures;
+    }
+
+    @Override
+    public String toString() {
+        return "<func>";
+    }
+}
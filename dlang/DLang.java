@@ -3,86 +3,111 @@ package dlang;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 
 public class DLang {
   //private static final AstPrinter printer = new AstPrinter();
-  static boolean hadError = false;
-  static boolean hadRuntimeError = false;
+  // shared by every run, so input buffered by one prompt line is still there for the next
+  private static final Input in = new Input(System.in);
+  private static final Output out = new Output(System.out);
 
   public static void main(String[] args) throws IOException {
+    // run the tree-walking Interpreter instead of the bytecode VM
+    boolean treeWalker = false;
+    // report what the Optimizer did on stderr
+    boolean stats = false;
+    // print the scanned tokens before running, for debugging the Scanner
+    boolean dumpTokens = false;
+    while (args.length > 0 && (args[0].equals("--tree") || args[0].equals("--stats")
+        || args[0].equals("--tokens"))) {
+      if (args[0].equals("--tree")) treeWalker = true;
+      if (args[0].equals("--stats")) stats = true;
+      if (args[0].equals("--tokens")) dumpTokens = true;
+      args = Arrays.copyOfRange(args, 1, args.length);
+    }
+
     if (args.length > 1) {
-      System.out.println("Usage: jlox [script]");
+      System.out.println("Usage: dlang [--tree] [--stats] [--tokens] [script]");
       System.exit(64); // [64]
     } else if (args.length == 1) {
-      runFile(args[0]);
+      runFile(args[0], treeWalker, stats, dumpTokens);
     } else {
-      runPrompt();
+      runPrompt(treeWalker);
     }
   }
-  private static void runFile(String path) throws IOException {
-    byte[] bytes = Files.readAllBytes(Paths.get(path));
-    run(new String(bytes, Charset.defaultCharset()));
-    if (hadError) System.exit(65);
-    if (hadRuntimeError) System.exit(70);
+  private static void runFile(String path, boolean treeWalker, boolean stats, boolean dumpTokens)
+      throws IOException {
+    ErrorReporter errors = new ErrorReporter(System.err);
+    Path script = Paths.get(path);
+    // a token dump and the optimizer's stats need the front end to run
+    ScriptCache cache = dumpTokens || stats ? null : ScriptCache.of(script);
+    List<Stmt> statements = cache == null ? null : cache.load();
+    if (statements == null) {
+      // the script is scanned while it is read instead of being loaded whole
+      try (Reader reader = Files.newBufferedReader(script, Charset.defaultCharset())) {
+        Parser parser;
+        if (dumpTokens) {
+          List<Token> tokens = new Scanner(reader, errors).scanTokens();
+          out.println(tokens.toString());
+          out.flush();
+          parser = new Parser(tokens, errors);
+        } else {
+          parser = new Parser(new Scanner(reader, errors), errors);
+        }
+        statements = compile(parser, new Resolver(errors), stats, errors);
+      }
+      if (statements != null && cache != null) cache.store(statements);
+    }
+    if (statements != null) execute(statements, treeWalker, in, out, errors);
+    if (errors.status() != ErrorReporter.OK) System.exit(errors.status());
   }
 
-  private static void runPrompt() throws IOException {
+  private static void runPrompt(boolean treeWalker) throws IOException {
     InputStreamReader input = new InputStreamReader(System.in);
     BufferedReader reader = new BufferedReader(input);
 
-    for (;;) { // [repl]
-      System.out.print("> ");
-      run(reader.readLine());
-      hadError = false;
-    }
+    new Repl(treeWalker, in, out).run(reader); // [repl]
   }
 
-  private static void run(String source) {
-    Scanner scanner = new Scanner(source);
-    List<Token> tokens = scanner.scanTokens();
-    Parser parser = new Parser(tokens);
+  // scans, parses, resolves and optimizes a program, null when it has errors. The resolver
+  // numbers the program's global slots, stats has the Optimizer report like --stats
+  static List<Stmt> compile(Reader source, Resolver resolver, boolean stats, ErrorReporter errors) {
+    return compile(new Parser(new Scanner(source, errors), errors), resolver, stats, errors);
+  }
+
+  static List<Stmt> compile(Parser parser, Resolver resolver, boolean stats, ErrorReporter errors) {
     List<Stmt> statements = parser.parse();
     //for(Stmt stmt : statements) {
       //  System.out.println(printer.print(stmt));
     //}
-    if (hadError) return;
-
-    Interpreter interpreter = new Interpreter();
+    if (errors.hadError) return null;
 
-    Resolver resolver = new Resolver(interpreter);
     resolver.resolve(statements);
 
-    if (hadError) return;
-    interpreter.interpret(statements);
+    if (errors.hadError) return null;
 
-    if (hadError) return;
-  }
-
-  static void error(int line, String message) {
-    report(line, "", message);
-  }
-
-  private static void report(int line, String where, String message) {
-    System.err.println(
-        "[line " + line + "] Error" + where + ": " + message);
-    hadError = true;
+    Optimizer optimizer = new Optimizer();
+    statements = optimizer.optimize(statements);
+    if (stats) {
+      errors.note("Optimizer removed " + optimizer.removed() + " nodes.");
+    }
+    return statements;
   }
 
-  static void error(Token token, String message) {
-    if (token.type == TokenType.EOF) {
-      report(token.line, " at end", message);
-    } else {
-      report(token.line, " at '" + token.lexeme + "'", message);
+  static void execute(List<Stmt> statements, boolean treeWalker, Input in, Output out,
+                      ErrorReporter errors) {
+    if (treeWalker) {
+      new Interpreter(in, out, errors).interpret(statements);
+      return;
     }
-  }
 
-  static void runtimeError(RuntimeError error) {
-    System.err.println(error.getMessage() +
-        "\n[line " + error.token.line + "]");
-    hadRuntimeError = true;
+    Chunk script = new Compiler().compile(statements);
+    new VM(in, out, errors).interpret(script);
   }
 }
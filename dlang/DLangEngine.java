@@ -0,0 +1,25 @@
+package dlang;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// entry point for embedding dlang: a source is scanned, parsed, resolved, optimized and
+// compiled to bytecode once, and the resulting program can then run any number of times
+public final class DLangEngine {
+    private DLangEngine() {
+    }
+
+    public static CompiledProgram compile(String source) {
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        ErrorReporter errors = new ErrorReporter(new PrintStream(messages, true, StandardCharsets.UTF_8));
+        Resolver resolver = new Resolver(errors);
+        List<Stmt> statements = DLang.compile(new StringReader(source), resolver, false, errors);
+        if (statements == null) {
+            throw new CompileError(messages.toString(StandardCharsets.UTF_8).trim());
+        }
+        return new CompiledProgram(new Compiler().compile(statements), resolver.globals());
+    }
+}
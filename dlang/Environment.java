@@ -1,66 +1,62 @@
 package dlang;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 class Environment {
+    // marks a global slot the program has a name for but did not define yet
+    private static final Object UNDEFINED = new Object();
+
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    private Object[] values;
 
     Environment() {
         enclosing = null;
+        values = new Object[16];
+        Arrays.fill(values, UNDEFINED);
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        this.values = new Object[size];
     }
 
-    Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
+    Object get(int slot, Token name) {
+        if (slot < values.length && values[slot] != UNDEFINED) {
+            return values[slot];
         }
 
-        if (enclosing != null) return enclosing.get(name);
-
         throw new RuntimeError(name,
                 "Undefined variable '" + name.lexeme + "'.");
     }
 
-    Object get(Token name, int index) {
-        if (values.containsKey(name.lexeme) && values.get(name.lexeme) instanceof List) {
-            List<Object> arrayElements = (List) values.get(name.lexeme);
-            if (index >= arrayElements.size()) {
-                throw new RuntimeError(name, "Index out of bounds error");
-            }
-            return arrayElements.get(index);
-        }
-
-        if (enclosing != null && enclosing.get(name) instanceof List) {
-            return enclosing.get(name, index);
+    void assign(int slot, Token name, Object value) {
+        if (slot < values.length && values[slot] != UNDEFINED) {
+            values[slot] = value;
+            return;
         }
 
-        throw new RuntimeError(name, "Undefined variable" + name.lexeme + ".");
+        throw new RuntimeError(name,
+                "Undefined variable '" + name.lexeme + "'.");
     }
 
-
-    void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
-
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+    // global slots come from the Resolver of the program, the global environment grows to
+    // hold whichever of them the program defines
+    void defineGlobal(int slot, Object value) {
+        if (slot >= values.length) {
+            int length = values.length;
+            values = Arrays.copyOf(values, Math.max(slot + 1, length * 2));
+            Arrays.fill(values, length, values.length, UNDEFINED);
         }
+        values[slot] = value;
+    }
 
-        throw new RuntimeError(name,
-                "Undefined variable '" + name.lexeme + "'.");
+    void define(int slot, Object value) {
+        values[slot] = value;
     }
 
-    void define(String name, Object value) {
-        values.put(name, value);
+    // forget every local so the frame can be entered again
+    void clear() {
+        Arrays.fill(values, null);
     }
 
     Environment ancestor(int distance) {
@@ -72,17 +68,17 @@ class Environment {
         return environment;
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    Object getAt(int distance, int slot) {
+        return ancestor(distance).values[slot];
     }
 
-    void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+    void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).values[slot] = value;
     }
 
     @Override
     public String toString() {
-        String result = values.toString();
+        String result = Arrays.toString(values);
         if (enclosing != null) {
             result += " -> " + enclosing.toString();
         }
@@ -0,0 +1,58 @@
+package dlang;
+
+import java.io.PrintStream;
+
+// errors of a single run; every run gets its own, so runs on different threads don't see
+// each other's errors
+final class ErrorReporter {
+    // exit statuses of a run, the same ones DLang exits with
+    static final int OK = 0;
+    static final int COMPILE_ERROR = 65;
+    static final int RUNTIME_ERROR = 70;
+
+    private final PrintStream err;
+    boolean hadError = false;
+    boolean hadRuntimeError = false;
+    // an error at the end of the source, which the REPL takes for input that continues
+    boolean hadErrorAtEnd = false;
+
+    ErrorReporter(PrintStream err) {
+        this.err = err;
+    }
+
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, " at end", message);
+            hadErrorAtEnd = true;
+        } else {
+            report(token.line, " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    void runtimeError(RuntimeError error) {
+        err.println(error.getMessage() +
+                "\n[line " + error.token.line + "]");
+        hadRuntimeError = true;
+    }
+
+    // notes that go to the error stream without being errors, like --stats
+    void note(String message) {
+        err.println(message);
+    }
+
+    int status() {
+        if (hadError) return COMPILE_ERROR;
+        if (hadRuntimeError) return RUNTIME_ERROR;
+        return OK;
+    }
+
+    private void report(int line, String where, String message) {
+        err.println(
+                "[line " + line + "] Error" + where + ": " + message);
+        hadError = true;
+    }
+}
@@ -50,6 +50,7 @@ abstract class Expr {
             this.left = left;
             this.operator = operator;
             this.right = right;
+            this.node = new BinaryNode(operator);
         }
 
         <R> R accept(Visitor<R> visitor) {
@@ -59,6 +60,8 @@ abstract class Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+        // specializes on the operand types seen by the Interpreter, changing at run time
+        final BinaryNode node;
     }
 
     static class Factor extends Expr {
@@ -66,6 +69,7 @@ abstract class Expr {
             this.left = left;
             this.operator = operator;
             this.right = right;
+            this.node = new BinaryNode(operator);
         }
 
         <R> R accept(Visitor<R> visitor) {
@@ -75,6 +79,8 @@ abstract class Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+        // specializes on the operand types seen by the Interpreter, changing at run time
+        final BinaryNode node;
     }
 
     static class Term extends Expr {
@@ -82,6 +88,7 @@ abstract class Expr {
             this.left = left;
             this.operator = operator;
             this.right = right;
+            this.node = new BinaryNode(operator);
         }
 
         <R> R accept(Visitor<R> visitor) {
@@ -91,6 +98,8 @@ abstract class Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+        // specializes on the operand types seen by the Interpreter, changing at run time
+        final BinaryNode node;
     }
 
     static class Unary extends Expr {
@@ -163,6 +172,16 @@ abstract class Expr {
 
         final List<Token> params;
         final List<Stmt> body;
+        // frame size, set by Resolver
+        int slots = 0;
+        // set by Resolver when a nested function literal may capture this function's frames
+        boolean hasClosures = false;
+        // changed at run time: calls counted by JitCompiler, negative once it gave up on the
+        // literal, and the compiled function. Runs on other threads may share the literal; a lost
+        // update only delays or repeats compilation, and volatile makes them see a fully set up
+        // compiled function
+        int invocations = 0;
+        volatile CompiledFunction compiled = null;
     }
 
     static class Variable extends Expr {
@@ -175,11 +194,14 @@ abstract class Expr {
         }
 
         final Token name;
+        // set by Resolver, a depth of -1 means the slot is a global one
+        int depth = -1;
+        int slot = -1;
     }
 
     static class ArrayElement extends Expr {
-        ArrayElement(Token name, Expr index) {
-            this.name = name;
+        ArrayElement(Variable array, Expr index) {
+            this.array = array;
             this.index = index;
         }
 
@@ -187,7 +209,7 @@ abstract class Expr {
             return visitor.visitArrayElementExpr(this);
         }
 
-        final Token name;
+        final Variable array;
         final Expr index;
     }
 
@@ -201,7 +223,6 @@ abstract class Expr {
         }
 
         final Token name;
-        Object value = null;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
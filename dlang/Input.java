@@ -0,0 +1,118 @@
+package dlang;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// whitespace separated values for readInt, readReal and readString; it keeps one large
+// buffer across reads and parses the bytes itself instead of going through java.util.Scanner
+final class Input {
+    private final InputStream source;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position = 0;
+    private int limit = 0;
+    // bytes of the current word
+    private byte[] word = new byte[64];
+    private int length = 0;
+
+    Input(InputStream source) {
+        this.source = source;
+    }
+
+    // value for the read expression named by the token
+    Object read(Token name) {
+        switch (name.type) {
+            case READ_INT:
+                return readInt(name);
+            case READ_REAL:
+                return readReal(name);
+            default:
+                return readString(name);
+        }
+    }
+
+    private Long readInt(Token name) {
+        if (!nextWord()) throw mismatch(name);
+
+        int i = 0;
+        boolean negative = false;
+        if (word[0] == '-' || word[0] == '+') {
+            negative = word[0] == '-';
+            i++;
+        }
+        if (i == length) throw mismatch(name);
+
+        // accumulated negatively so that Long.MIN_VALUE fits
+        long value = 0;
+        for (; i < length; i++) {
+            int digit = word[i] - '0';
+            if (digit < 0 || digit > 9) throw mismatch(name);
+            if (value < (Long.MIN_VALUE + digit) / 10) throw mismatch(name);
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Long.MIN_VALUE) throw mismatch(name);
+        return negative ? value : -value;
+    }
+
+    private Double readReal(Token name) {
+        if (!nextWord()) throw mismatch(name);
+
+        for (int i = 0; i < length; i++) {
+            byte c = word[i];
+            if ((c < '0' || c > '9') && c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E') {
+                throw mismatch(name);
+            }
+        }
+        try {
+            return Double.parseDouble(new String(word, 0, length, Charset.defaultCharset()));
+        } catch (NumberFormatException e) {
+            throw mismatch(name);
+        }
+    }
+
+    private String readString(Token name) {
+        if (!nextWord()) throw mismatch(name);
+        return new String(word, 0, length, Charset.defaultCharset());
+    }
+
+    // reads the next run of non-whitespace bytes into word, false at the end of the input
+    private boolean nextWord() {
+        length = 0;
+        int c = read();
+        while (c >= 0 && isWhitespace(c)) c = read();
+        if (c < 0) return false;
+
+        while (c >= 0 && !isWhitespace(c)) {
+            if (length == word.length) word = Arrays.copyOf(word, length * 2);
+            word[length++] = (byte) c;
+            c = read();
+        }
+        return true;
+    }
+
+    private int read() {
+        if (position == limit) {
+            try {
+                limit = source.read(buffer, 0, buffer.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0x0B;
+    }
+
+    private static RuntimeError mismatch(Token name) {
+        return new RuntimeError(name, name.lexeme + " input mismatch exception");
+    }
+}
@@ -3,150 +3,206 @@ package dlang;
 
 import java.util.*;
 
-import static dlang.TokenType.LEFT_BRACKET;
 import static dlang.TokenType.LEFT_PAREN;
 
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion> {
     final Environment globals = new Environment();
 
     private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    // value of the last executed return statement
+    private Object returnValue = null;
+    // callee and arguments of a pending tail call
+    private DFunction tailFunction = null;
+    private Object[] tailArguments = new Object[16];
+    private int tailArgumentCount = 0;
+    // function literals whose compiled code overflowed the JVM stack in this run
+    private final Set<Expr.FunctionLiteral> overflowed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Input in;
+    private final Output out;
+    private final ErrorReporter errors;
 
     Interpreter() {
+        this(new Input(System.in), new Output(System.out), new ErrorReporter(System.err));
+    }
+
+    Interpreter(Input in, Output out, ErrorReporter errors) {
+        this.in = in;
+        this.out = out;
+        this.errors = errors;
     }
 
     void interpret(List<Stmt> statements) {
+        tailArgumentCount = 0;
         try {
             for (Stmt statement : statements) {
-                execute(statement);
+                if (execute(statement) != Completion.NORMAL) break;
             }
         } catch (RuntimeError error) {
-            DLang.runtimeError(error);
+            // what the script printed goes out before the error
+            out.flush();
+            errors.runtimeError(error);
+        } finally {
+            out.flush();
         }
     }
 
     private Object evaluate(Expr expr) {
-        if (expr instanceof Expr.Read && ((Expr.Read) expr).value != null) return ((Expr.Read) expr).value;
         return expr.accept(this);
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    private Completion execute(Stmt stmt) {
+        return stmt.accept(this);
     }
 
-    void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
-    }
-
-    void executeBody(List<Stmt> statements, Environment environment) {
+    Completion executeBody(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
         try {
             this.environment = environment;
 
-            for (Stmt statement : statements) {
-                execute(statement);
+            for (int i = 0; i < statements.size(); i++) {
+                Completion completion = execute(statements.get(i));
+                if (completion != Completion.NORMAL) return completion;
             }
+            return Completion.NORMAL;
         } finally {
             this.environment = previous;
         }
     }
 
     @Override
-    public Void visitBodyStmt(Stmt.Body stmt) {
-        executeBody(stmt.statements, new Environment(environment));
-        return null;
+    public Completion visitBodyStmt(Stmt.Body stmt) {
+        return executeBody(stmt.statements, new Environment(environment, stmt.slots));
     }
 
     @Override
-    public Void visitAssignmentStmt(Stmt.Assignment stmt) {
+    public Completion visitAssignmentStmt(Stmt.Assignment stmt) {
         Object value = evaluate(stmt.right);
 
-        Integer distance = locals.get(stmt.left);
-        if (distance != null) {
-            if (stmt.left instanceof Expr.Variable) {
-                environment.assignAt(distance, ((Expr.Variable) stmt.left).name, value);
-            } else if (stmt.left instanceof Expr.ArrayElement) {
-                Double index = (Double) evaluate(((Expr.ArrayElement) stmt.left).index);
-                if (index.intValue() == index) {
-                    List<Object> array = (List) environment.get(((Expr.ArrayElement) stmt.left).name);
-                    array.set(index.intValue() - 1, value);
-                    environment.assignAt(distance, ((Expr.ArrayElement) stmt.left).name, array);
-                } else {
-                    throw new RuntimeError(new Token(LEFT_BRACKET, "left bracket", "left bracket", 0), "Index of type double");
-                }
-            }
-        } else {
-            if (stmt.left instanceof Expr.Variable) {
-                globals.assign(((Expr.Variable) stmt.left).name, value);
-            } else if (stmt.left instanceof Expr.ArrayElement) {
-                Double index = (Double) evaluate(((Expr.ArrayElement) stmt.left).index);
-                if (index.intValue() == index) {
-                    List<Object> array = (List) globals.get(((Expr.ArrayElement) stmt.left).name);
-                    array.set(index.intValue() - 1, value);
-                    globals.assign(((Expr.ArrayElement) stmt.left).name, array);
-                } else {
-                    throw new RuntimeError(new Token(LEFT_BRACKET, "left bracket", "left bracket", 0), "Index of type double");
-                }
+        if (stmt.left instanceof Expr.Variable) {
+            Expr.Variable variable = (Expr.Variable) stmt.left;
+            if (variable.depth >= 0) {
+                environment.assignAt(variable.depth, variable.slot, value);
+            } else {
+                globals.assign(variable.slot, variable.name, value);
             }
+        } else if (stmt.left instanceof Expr.ArrayElement) {
+            Expr.ArrayElement element = (Expr.ArrayElement) stmt.left;
+            Object index = evaluate(element.index);
+            Operators.setElement(element.array.name, lookUpVariable(element.array), index, value);
         }
 
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
-        if (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.thenBranch);
+    public Completion visitIfStmt(Stmt.If stmt) {
+        if (Operators.isTruthy(evaluate(stmt.condition))) {
+            return execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Completion visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
-        return null;
+        out.println(Operators.stringify(value));
+        return Completion.NORMAL;
     }
 
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall != null) {
+            // the call itself is made by call() once this frame is unwound
+            DFunction function = callee(stmt.tailCall);
+            for (Expr argument : stmt.tailCall.exprList) {
+                Object value = evaluate(argument);
+                if (tailArgumentCount == tailArguments.length) {
+                    tailArguments = Arrays.copyOf(tailArguments, tailArgumentCount * 2);
+                }
+                tailArguments[tailArgumentCount++] = value;
+            }
+            tailFunction = function;
+            return Completion.TAIL_CALL;
+        }
+
         Object value = null;
         if (stmt.value != null) value = evaluate(stmt.value);
 
-        throw new Return(value);
+        returnValue = value;
+        return Completion.RETURN;
     }
 
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         for (Stmt.Var.VarDecl varDecl : stmt.varDecls) {
             if (varDecl.initializer != null) {
                 value = evaluate(varDecl.initializer);
             }
-            environment.define(varDecl.name.lexeme, value);
+            if (varDecl.global) {
+                globals.defineGlobal(varDecl.slot, value);
+            } else {
+                environment.define(varDecl.slot, value);
+            }
         }
 
-        return null;
+        return Completion.NORMAL;
     }
 
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
-        while (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.body);
+    public Completion visitWhileStmt(Stmt.While stmt) {
+        while (Operators.isTruthy(evaluate(stmt.condition))) {
+            Completion completion = execute(stmt.body);
+            if (completion != Completion.NORMAL) return completion;
+        }
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Completion visitForStmt(Stmt.For stmt) {
+        Object from = evaluate(stmt.from);
+        Object to = evaluate(stmt.to);
+
+        Environment previous = environment;
+        Environment loop = new Environment(environment, 1);
+        try {
+            environment = loop;
+            if (from instanceof Long && to instanceof Long && !stmt.counterAssigned) {
+                // nothing but the loop writes the variable, so it is counted and compared as a
+                // long. The body still reads it from the slot, which costs a box per iteration
+                long end = (long) to;
+                long i = (long) from;
+                for (; i < end; i++) {
+                    loop.define(0, i);
+                    Completion completion = execute(stmt.body);
+                    if (completion != Completion.NORMAL) return completion;
+                }
+                loop.define(0, i);
+                return Completion.NORMAL;
+            }
+
+            loop.define(0, from);
+            while (Operators.less(stmt.name, loop.getAt(0, 0), to)) {
+                Completion completion = execute(stmt.body);
+                if (completion != Completion.NORMAL) return completion;
+                loop.define(0, Operators.add(stmt.name, loop.getAt(0, 0), 1L));
+            }
+            return Completion.NORMAL;
+        } finally {
+            environment = previous;
         }
-        return null;
     }
 
     @Override
-    public Void visitReferenceStmt(Stmt.Reference stmt) {
+    public Completion visitReferenceStmt(Stmt.Reference stmt) {
         evaluate(stmt.reference);
-        return null;
+        return Completion.NORMAL;
     }
 
 
@@ -159,10 +215,12 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitLiteralExpr(Expr.Literal expr) {
         if (expr.value instanceof List) {
-            List<Object> right = new ArrayList<>();
             List<Expr> values = (List) expr.value;
-            values.forEach(i -> right.add(evaluate(i)));
-            return right;
+            Object[] elements = new Object[values.size()];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = evaluate(values.get(i));
+            }
+            return DArray.of(elements, 0, elements.length);
         } else {
             return expr.value;
         }
@@ -170,7 +228,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitFunctionLiteralExpr(Expr.FunctionLiteral expr) {
-        return expr;
+        return new DFunction(expr, environment);
     }
 
     @Override
@@ -180,11 +238,11 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
         switch (expr.operator.type) {
             case OR:
-                return isTruthy(left) || isTruthy(right);
+                return Operators.isTruthy(left) || Operators.isTruthy(right);
             case AND:
-                return isTruthy(left) && isTruthy(right);
+                return Operators.isTruthy(left) && Operators.isTruthy(right);
             case XOR:
-                return isTruthy(left) ^ isTruthy(right);
+                return Operators.isTruthy(left) ^ Operators.isTruthy(right);
             default:
                 return null;
         }
@@ -194,78 +252,21 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitRelationExpr(Expr.Relation expr) {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
-
-        switch (expr.operator.type) {
-            case NOT_EQUAL:
-                return !isEqual(left, right);
-            case EQUAL:
-                return isEqual(left, right);
-            case GREATER:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left > (double) right;
-            case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left >= (double) right;
-            case LESS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left < (double) right;
-            case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left <= (double) right;
-        }
-        // Unreachable.
-        return null;
+        return expr.node.execute(left, right);
     }
 
     @Override
     public Object visitFactorExpr(Expr.Factor expr) {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
-
-        switch (expr.operator.type) {
-            case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left - (double) right;
-            case PLUS:
-                if (left instanceof Double && right instanceof Double) {
-                    return (double) left + (double) right;
-                }
-
-                if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
-                }
-
-                if (left instanceof List && right instanceof List) {
-                    ArrayList<Object> result = new ArrayList<>();
-
-                    result.addAll((List) left);
-                    result.addAll((List) right);
-
-                    return result;
-                }
-
-                throw new RuntimeError(expr.operator,
-                        "Operands must be two numbers or two strings.");
-        }
-        //Unreachable
-        return null;
+        return expr.node.execute(left, right);
     }
 
     @Override
     public Object visitTermExpr(Expr.Term expr) {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
-
-        switch (expr.operator.type) {
-            case SLASH:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left / (double) right;
-            case STAR:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left * (double) right;
-        }
-        //Unreachable
-        return null;
+        return expr.node.execute(left, right);
     }
 
     @Override
@@ -273,45 +274,14 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object left = evaluate(expr.left);
         if (expr.operator != null) {
             if (expr.operator.type == TokenType.IS) {
-                switch (expr.type) {
-                    case INT:
-                        return left instanceof Integer;
-                    case BOOL:
-                        return left instanceof Boolean;
-                    case FUNC:
-                        try {
-                            Expr.FunctionLiteral func = (Expr.FunctionLiteral) left;
-                            return true;
-                        } catch (ClassCastException e) {
-                            return false;
-                        }
-                    case REAL:
-                        return left instanceof Double;
-                    //TODO
-                    case ARRAY:
-                        return false;
-                    case TUPLE:
-                        return false;
-                    case STRING:
-                        return left instanceof String;
-                    default:
-                        return isEqual(left, null);
-                }
+                return Operators.is(left, expr.type);
             }
             switch (expr.operator.type) {
                 case PLUS:
                 case MINUS:
-                    if (left instanceof Double) {
-                        return -(Double) left;
-                    } else {
-                        throw new RuntimeError(expr.operator, "Incorrect operand for MINUS.");
-                    }
+                    return Operators.negate(expr.operator, left);
                 case NOT:
-                    if (left instanceof Boolean) {
-                        return !(Boolean) left;
-                    } else {
-                        throw new RuntimeError(expr.operator, "Incorrect operand for NOT.");
-                    }
+                    return Operators.not(expr.operator, left);
                 default:
                     return left;
             }
@@ -325,138 +295,93 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object left = evaluate(expr.left);
 
         if (expr.operator.type == LEFT_PAREN) {
-            try {
-                if (left == null) {
-                    throw new RuntimeError(expr.operator, "Undefined function.");
-                }
-                Expr.FunctionLiteral func = (Expr.FunctionLiteral) left;
-                ;
-                List<Token> funcParams = func.params;
-                List<Expr> params = expr.exprList;
-                List<Stmt> body = func.body;
-                if (params.size() != funcParams.size()) {
-                    throw new RuntimeError(expr.operator, "Incorrect number of parameters.");
-                }
-                List<Stmt> inits = new ArrayList<>();
-                for (int i = 0; i < params.size(); i++) {
-                    List<Stmt.Var.VarDecl> paramDeclaration = new ArrayList<>(1);
-                    if (params.get(i) instanceof Expr.Literal) {
-                        paramDeclaration.add(new Stmt.Var.VarDecl(funcParams.get(i), params.get(i)));
-                    } else {
-                        paramDeclaration.add(new Stmt.Var.VarDecl(funcParams.get(i), new Expr.Literal(evaluate(params.get(i)))));
-                    }
-                    Stmt.Var param = new Stmt.Var(paramDeclaration);
-                    inits.add(param);
-                }
-                inits.addAll(body);
-                try {
-                    executeBody(inits, new Environment(environment));
-                } catch (Return value) {
-                    return value.value;
-                }
-                return null;
-            } catch (ClassCastException e) {
-                throw new RuntimeError(expr.operator, "Object not callable.");
-            }
+            DFunction func = callee(expr, left);
+            List<Expr> arguments = expr.exprList;
 
+            // parameters take the first slots of the frame
+            Environment frame = new Environment(func.closure, func.slots);
+            for (int i = 0; i < arguments.size(); i++) {
+                frame.define(i, evaluate(arguments.get(i)));
+            }
+            return call(func, frame);
         } else {
             //TODO
             return null;
         }
     }
 
-    @Override
-    public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name, expr);
-    }
-
-    @Override
-    public Object visitArrayElementExpr(Expr.ArrayElement expr) {
-        return lookUpArrayElement(expr.name, expr, expr.index);
+    private DFunction callee(Expr.Reference expr) {
+        return callee(expr, evaluate(expr.left));
     }
 
-    @Override
-    public Object visitReadExpr(Expr.Read expr) {
-        java.util.Scanner in = new java.util.Scanner(System.in).useLocale(Locale.US);
-
-        Object value = null;
-
-        try {
-            switch (expr.name.type) {
-                case READ_INT:
-                    value = in.nextDouble();
-                    break;
-                case READ_REAL:
-                    value = in.nextDouble();
-                    break;
-                case READ_STRING:
-                    value = in.next();
-                    break;
-            }
-        } catch (Exception ex) {
-            throw new RuntimeError(expr.name, expr.name.lexeme + " input mismatch exception");
+    private DFunction callee(Expr.Reference expr, Object left) {
+        if (left == null) {
+            throw new RuntimeError(expr.operator, "Undefined function.");
         }
-
-        expr.value = value;
-
-        return value;
-    }
-
-    private Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            return environment.getAt(distance, name.lexeme);
-        } else {
-            return globals.get(name);
+        if (!(left instanceof DFunction)) {
+            throw new RuntimeError(expr.operator, "Object not callable.");
         }
-    }
-
-    private Object lookUpArrayElement(Token name, Expr expr, Expr index) {
-        Object indexEval = evaluate(index);
-        if (!(indexEval instanceof Double)) {
-            throw new RuntimeError(name, "Operand must be a number.");
+        DFunction func = (DFunction) left;
+        if (expr.exprList.size() != func.arity) {
+            throw new RuntimeError(expr.operator, "Incorrect number of parameters.");
         }
-
-        Integer distance = locals.get(expr);
-
-        if (distance != null) return environment.getAt(distance, name.lexeme);
-        else return globals.get(name, ((Double) indexEval).intValue() - 1);
+        return func;
     }
 
+    // runs tail calls as a loop, so they need no Java stack and a self call no new frame
+    private Object call(DFunction func, Environment frame) {
+        for (;;) {
+            Object compiled = JitCompiler.run(func, frame, overflowed);
+            if (compiled != JitCompiler.INTERPRET) return compiled;
 
-    private void checkNumberOperands(Token operator,
-                                     Object left, Object right) {
-        if (left instanceof Double && right instanceof Double) return;
+            Completion completion = executeBody(func.body, frame);
+            if (completion == Completion.RETURN) {
+                Object value = returnValue;
+                returnValue = null;
+                return value;
+            }
+            if (completion != Completion.TAIL_CALL) return null;
+
+            DFunction next = tailFunction;
+            tailFunction = null;
+            if (next == func && func.reusesFrame) {
+                frame.clear();
+            } else {
+                frame = new Environment(next.closure, next.slots);
+            }
 
-        throw new RuntimeError(operator, "Operands must be numbers.");
+            tailArgumentCount -= next.arity;
+            for (int i = 0; i < next.arity; i++) {
+                frame.define(i, tailArguments[tailArgumentCount + i]);
+                tailArguments[tailArgumentCount + i] = null;
+            }
+            func = next;
+        }
     }
 
-
-    private boolean isTruthy(Object object) {
-        if (object == null) return false;
-        if (object instanceof Boolean) return (boolean) object;
-        return true;
+    @Override
+    public Object visitVariableExpr(Expr.Variable expr) {
+        return lookUpVariable(expr);
     }
 
-    private boolean isEqual(Object a, Object b) {
-        if (a == null && b == null) return true;
-        if (a == null) return false;
-
-        return a.equals(b);
+    @Override
+    public Object visitArrayElementExpr(Expr.ArrayElement expr) {
+        Object index = evaluate(expr.index);
+        return Operators.element(expr.array.name, lookUpVariable(expr.array), index);
     }
 
+    @Override
+    public Object visitReadExpr(Expr.Read expr) {
+        // a prompt printed before the read has to be visible
+        out.flush();
+        return in.read(expr.name);
+    }
 
-    private String stringify(Object object) {
-        if (object == null) return "nil";
-
-        if (object instanceof Double) {
-            String text = object.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
+    private Object lookUpVariable(Expr.Variable expr) {
+        if (expr.depth >= 0) {
+            return environment.getAt(expr.depth, expr.slot);
+        } else {
+            return globals.get(expr.slot, expr.name);
         }
-
-        return object.toString();
     }
 }
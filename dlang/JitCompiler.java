@@ -0,0 +1,542 @@
+package dlang;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dlang.ClassFile.*;
+import static dlang.TokenType.LEFT_PAREN;
+
+// second tier for hot function literals: once a literal was called often enough, a function that
+// only computes with integers is translated into a JVM class so HotSpot can compile it like Java.
+// The generated code assumes its arguments and outer variables are integers and that it only
+// calls itself; when an assumption fails it deoptimizes, and as such a function has no side
+// effects the interpreter simply runs the call again from the start
+class JitCompiler implements Expr.Visitor<JitCompiler.Kind>, Stmt.Visitor<Void> {
+    // returned by run() when the call has to be interpreted
+    static final Object INTERPRET = new Object();
+
+    // calls before a literal is compiled, a negative threshold turns the tier off
+    private static final int THRESHOLD = Integer.getInteger("dlang.jit.threshold", 1000);
+    private static final String BASE = "dlang/CompiledFunction";
+    private static final AtomicInteger classCount = new AtomicInteger();
+
+    enum Kind {
+        INTEGER, BOOLEAN
+    }
+
+    // the function uses something the generated code does not cover
+    private static final class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    // every generated class gets its own loader, so it can be unloaded with its function
+    private static final class Loader extends ClassLoader {
+        Loader() {
+            super(CompiledFunction.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    // overflowed holds the literals whose compiled code ran out of JVM stack in the calling run;
+    // the run interprets them from then on, other runs of the same literals still use the code
+    static Object run(DFunction function, Environment frame, Set<Expr.FunctionLiteral> overflowed) {
+        Expr.FunctionLiteral declaration = function.declaration;
+        if (!overflowed.isEmpty() && overflowed.contains(declaration)) return INTERPRET;
+        CompiledFunction compiled = declaration.compiled;
+        if (compiled == null) {
+            if (THRESHOLD < 0 || declaration.invocations < 0) return INTERPRET;
+            if (++declaration.invocations < THRESHOLD) return INTERPRET;
+
+            compiled = compile(declaration);
+            if (compiled == null) {
+                declaration.invocations = -1;
+                return INTERPRET;
+            }
+            declaration.compiled = compiled;
+        }
+
+        try {
+            return compiled.call(function, frame);
+        } catch (CompiledFunction.Deoptimize e) {
+            declaration.compiled = null;
+            declaration.invocations = -1;
+            return INTERPRET;
+        } catch (StackOverflowError e) {
+            // self calls recurse on the JVM stack, the VM keeps its frames on the heap and can
+            // go much deeper. Only this run's input recursed that deep, so only this run stops
+            // using the compiled code
+            overflowed.add(declaration);
+            return INTERPRET;
+        }
+    }
+
+    private static CompiledFunction compile(Expr.FunctionLiteral declaration) {
+        try {
+            JitCompiler compiler = new JitCompiler(declaration);
+            byte[] bytes = compiler.compile();
+            Class<?> type = new Loader().define(compiler.file.name.replace('/', '.'), bytes);
+            CompiledFunction compiled = (CompiledFunction) type.getDeclaredConstructor().newInstance();
+            compiled.tokens = compiler.tokens.toArray(new Token[0]);
+            return compiled;
+        } catch (Unsupported | ClassFile.TooLarge e) {
+            return null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // a class the JVM refuses only costs the speed up
+            return null;
+        }
+    }
+
+    private final Expr.FunctionLiteral declaration;
+    private final ClassFile file;
+    private final String runDescriptor;
+    private final List<Token> tokens = new ArrayList<>();
+    // first JVM local of each scope inside the function, the function's own scope first
+    private final List<Integer> scopes = new ArrayList<>();
+    private int nextLocal;
+    private ClassFile.Code code;
+    private ClassFile.Label start;
+
+    private JitCompiler(Expr.FunctionLiteral declaration) {
+        this.declaration = declaration;
+        this.file = new ClassFile("dlang/CompiledFunction$" + classCount.incrementAndGet(), BASE);
+
+        StringBuilder descriptor = new StringBuilder("(Ljava/lang/Object;");
+        for (int i = 0; i < declaration.params.size(); i++) {
+            descriptor.append('J');
+        }
+        this.runDescriptor = descriptor.append(")J").toString();
+    }
+
+    private byte[] compile() {
+        if (declaration.hasClosures) throw new Unsupported();
+
+        ClassFile.Code constructor = file.method(ACC_PUBLIC, "<init>", "()V");
+        constructor.aload(0);
+        constructor.invoke(INVOKESPECIAL, BASE, "<init>", "()V");
+        constructor.op(RETURN, 0);
+
+        // call(self, frame) unboxes the arguments and enters run(self, arguments...)
+        ClassFile.Code call = file.method(ACC_PUBLIC, "call",
+                "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+        call.aload(0);
+        call.aload(1);
+        for (int i = 0; i < declaration.params.size(); i++) {
+            call.aload(0);
+            call.aload(2);
+            call.iconst(i);
+            call.invoke(INVOKEVIRTUAL, BASE, "argument", "(Ljava/lang/Object;I)J");
+        }
+        call.invoke(INVOKEVIRTUAL, file.name, "run", runDescriptor);
+        call.invoke(INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;");
+        call.op(ARETURN, -1);
+
+        // locals of run: this, self, then two for every slot of every scope
+        code = file.method(ACC_PUBLIC | ACC_FINAL, "run", runDescriptor);
+        scopes.add(2);
+        nextLocal = 2 + 2 * declaration.slots;
+        start = code.label();
+        code.place(start);
+        for (Stmt statement : declaration.body) {
+            compile(statement);
+        }
+        // falling off the end returns nil, which the interpreter produces
+        deoptimize();
+
+        return file.toByteArray();
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private Kind compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private void compile(Expr expr, Kind kind) {
+        if (compile(expr) != kind) throw new Unsupported();
+    }
+
+    @Override
+    public Void visitBodyStmt(Stmt.Body stmt) {
+        int base = nextLocal;
+        scopes.add(base);
+        nextLocal += 2 * stmt.slots;
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        scopes.remove(scopes.size() - 1);
+        nextLocal = base;
+        return null;
+    }
+
+    @Override
+    public Void visitAssignmentStmt(Stmt.Assignment stmt) {
+        if (!(stmt.left instanceof Expr.Variable)) throw new Unsupported();
+        Expr.Variable variable = (Expr.Variable) stmt.left;
+        if (!isLocal(variable)) throw new Unsupported();
+
+        compile(stmt.right, Kind.INTEGER);
+        code.lstore(local(variable));
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition, Kind.BOOLEAN);
+        ClassFile.Label elseBranch = code.label();
+        code.jump(IFEQ, elseBranch);
+        compile(stmt.thenBranch);
+
+        if (stmt.elseBranch != null) {
+            ClassFile.Label end = code.label();
+            code.jump(GOTO, end);
+            code.place(elseBranch);
+            compile(stmt.elseBranch);
+            code.place(end);
+        } else {
+            code.place(elseBranch);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) throw new Unsupported();
+
+        if (stmt.tailCall != null) {
+            // a self tail call becomes a jump back to the start with new parameters
+            selfCall(stmt.tailCall);
+            for (Expr argument : stmt.tailCall.exprList) {
+                compile(argument, Kind.INTEGER);
+            }
+            for (int i = stmt.tailCall.exprList.size() - 1; i >= 0; i--) {
+                code.lstore(2 + 2 * i);
+            }
+            code.jump(GOTO, start);
+            return null;
+        }
+
+        compile(stmt.value, Kind.INTEGER);
+        code.op(LRETURN, -2);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        // a declaration without initializer takes the last value of the statement
+        int previous = -1;
+        for (Stmt.Var.VarDecl varDecl : stmt.varDecls) {
+            int local = scopes.get(scopes.size() - 1) + 2 * varDecl.slot;
+            if (varDecl.initializer != null) {
+                compile(varDecl.initializer, Kind.INTEGER);
+            } else if (previous >= 0) {
+                code.lload(previous);
+            } else {
+                throw new Unsupported();
+            }
+            code.lstore(local);
+            previous = local;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        ClassFile.Label loopStart = code.label();
+        ClassFile.Label exit = code.label();
+        code.place(loopStart);
+        compile(stmt.condition, Kind.BOOLEAN);
+        code.jump(IFEQ, exit);
+        compile(stmt.body);
+        code.jump(GOTO, loopStart);
+        code.place(exit);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        // the loop's scope holds the variable, the bound goes into the local after it
+        int counter = nextLocal;
+        int bound = counter + 2;
+        compile(stmt.from, Kind.INTEGER);
+        code.lstore(counter);
+        compile(stmt.to, Kind.INTEGER);
+        code.lstore(bound);
+        scopes.add(counter);
+        nextLocal += 4;
+
+        ClassFile.Label test = code.label();
+        ClassFile.Label exit = code.label();
+        code.place(test);
+        code.lload(counter);
+        code.lload(bound);
+        code.op(LCMP, -3);
+        code.jump(IFGE, exit);
+        compile(stmt.body);
+        code.aload(0);
+        code.lload(counter);
+        code.lconst(1);
+        code.iconst(token(stmt.name));
+        code.invoke(INVOKEVIRTUAL, BASE, "add", "(JJI)J");
+        code.lstore(counter);
+        code.jump(GOTO, test);
+        code.place(exit);
+
+        scopes.remove(scopes.size() - 1);
+        nextLocal = counter;
+        return null;
+    }
+
+    @Override
+    public Void visitReferenceStmt(Stmt.Reference stmt) {
+        compile(stmt.reference, Kind.INTEGER);
+        code.op(POP2, -2);
+        return null;
+    }
+
+    @Override
+    public Kind visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left, Kind.BOOLEAN);
+        compile(expr.right, Kind.BOOLEAN);
+
+        switch (expr.operator.type) {
+            case OR:
+                code.op(IOR, -1);
+                break;
+            case AND:
+                code.op(IAND, -1);
+                break;
+            case XOR:
+                code.op(IXOR, -1);
+                break;
+            default:
+                throw new Unsupported();
+        }
+        return Kind.BOOLEAN;
+    }
+
+    @Override
+    public Kind visitRelationExpr(Expr.Relation expr) {
+        Kind left = compile(expr.left);
+        Kind right = compile(expr.right);
+        if (left != right) throw new Unsupported();
+
+        if (left == Kind.BOOLEAN) {
+            switch (expr.operator.type) {
+                case EQUAL:
+                    return bool(IF_ICMPEQ);
+                case NOT_EQUAL:
+                    return bool(IF_ICMPNE);
+                default:
+                    throw new Unsupported();
+            }
+        }
+
+        code.op(LCMP, -3);
+        switch (expr.operator.type) {
+            case EQUAL:
+                return bool(IFEQ);
+            case NOT_EQUAL:
+                return bool(IFNE);
+            case GREATER:
+                return bool(IFGT);
+            case GREATER_EQUAL:
+                return bool(IFGE);
+            case LESS:
+                return bool(IFLT);
+            case LESS_EQUAL:
+                return bool(IFLE);
+            default:
+                throw new Unsupported();
+        }
+    }
+
+    @Override
+    public Kind visitFactorExpr(Expr.Factor expr) {
+        switch (expr.operator.type) {
+            case MINUS:
+                return arithmetic("subtract", expr.left, expr.operator, expr.right);
+            case PLUS:
+                return arithmetic("add", expr.left, expr.operator, expr.right);
+            default:
+                throw new Unsupported();
+        }
+    }
+
+    @Override
+    public Kind visitTermExpr(Expr.Term expr) {
+        switch (expr.operator.type) {
+            case SLASH:
+                return arithmetic("divide", expr.left, expr.operator, expr.right);
+            case STAR:
+                return arithmetic("multiply", expr.left, expr.operator, expr.right);
+            default:
+                throw new Unsupported();
+        }
+    }
+
+    @Override
+    public Kind visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator == null) return compile(expr.left);
+
+        switch (expr.operator.type) {
+            case PLUS:
+            case MINUS:
+                code.aload(0);
+                compile(expr.left, Kind.INTEGER);
+                code.iconst(token(expr.operator));
+                code.invoke(INVOKEVIRTUAL, BASE, "negate", "(JI)J");
+                return Kind.INTEGER;
+            case NOT:
+                compile(expr.left, Kind.BOOLEAN);
+                code.iconst(1);
+                code.op(IXOR, -1);
+                return Kind.BOOLEAN;
+            default:
+                throw new Unsupported();
+        }
+    }
+
+    @Override
+    public Kind visitReferenceExpr(Expr.Reference expr) {
+        if (expr.operator.type != LEFT_PAREN) throw new Unsupported();
+
+        selfCall(expr);
+        code.aload(0);
+        code.aload(1);
+        for (Expr argument : expr.exprList) {
+            compile(argument, Kind.INTEGER);
+        }
+        code.invoke(INVOKEVIRTUAL, file.name, "run", runDescriptor);
+        return Kind.INTEGER;
+    }
+
+    @Override
+    public Kind visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public Kind visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value instanceof Long) {
+            code.lconst((Long) expr.value);
+            return Kind.INTEGER;
+        }
+        if (expr.value instanceof Boolean) {
+            code.iconst((Boolean) expr.value ? 1 : 0);
+            return Kind.BOOLEAN;
+        }
+        throw new Unsupported();
+    }
+
+    @Override
+    public Kind visitFunctionLiteralExpr(Expr.FunctionLiteral expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Kind visitVariableExpr(Expr.Variable expr) {
+        if (isLocal(expr)) {
+            code.lload(local(expr));
+            return Kind.INTEGER;
+        }
+
+        outerVariable(expr);
+        code.invoke(INVOKEVIRTUAL, BASE, "integer", "(Ljava/lang/Object;III)J");
+        return Kind.INTEGER;
+    }
+
+    @Override
+    public Kind visitArrayElementExpr(Expr.ArrayElement expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Kind visitReadExpr(Expr.Read expr) {
+        throw new Unsupported();
+    }
+
+    // checks that the callee is the running function itself, arguments are left to the caller
+    private void selfCall(Expr.Reference call) {
+        Expr callee = call.left;
+        while (callee instanceof Expr.Unary && ((Expr.Unary) callee).operator == null) {
+            callee = ((Expr.Unary) callee).left;
+        }
+        if (!(callee instanceof Expr.Variable) || isLocal((Expr.Variable) callee)) {
+            throw new Unsupported();
+        }
+        if (call.exprList.size() != declaration.params.size()) throw new Unsupported();
+
+        outerVariable((Expr.Variable) callee);
+        code.invoke(INVOKEVIRTUAL, BASE, "variable", "(Ljava/lang/Object;III)Ljava/lang/Object;");
+        code.aload(1);
+        ClassFile.Label self = code.label();
+        code.jump(IF_ACMPEQ, self);
+        deoptimize();
+        code.place(self);
+    }
+
+    // pushes this and the arguments of CompiledFunction.variable for a variable outside the function
+    private void outerVariable(Expr.Variable variable) {
+        code.aload(0);
+        code.aload(1);
+        code.iconst(variable.depth < 0 ? -1 : variable.depth - scopes.size());
+        code.iconst(variable.slot);
+        code.iconst(token(variable.name));
+    }
+
+    private boolean isLocal(Expr.Variable variable) {
+        return variable.depth >= 0 && variable.depth < scopes.size();
+    }
+
+    private int local(Expr.Variable variable) {
+        return scopes.get(scopes.size() - 1 - variable.depth) + 2 * variable.slot;
+    }
+
+    // the checked integer operations are helpers of CompiledFunction, called on this
+    private Kind arithmetic(String helper, Expr left, Token operator, Expr right) {
+        code.aload(0);
+        compile(left, Kind.INTEGER);
+        compile(right, Kind.INTEGER);
+        code.iconst(token(operator));
+        code.invoke(INVOKEVIRTUAL, BASE, helper, "(JJI)J");
+        return Kind.INTEGER;
+    }
+
+    // turns the outcome of a conditional jump into 0 or 1
+    private Kind bool(int jump) {
+        ClassFile.Label isTrue = code.label();
+        ClassFile.Label end = code.label();
+        code.jump(jump, isTrue);
+        code.iconst(0);
+        code.jump(GOTO, end);
+        code.place(isTrue);
+        code.iconst(1);
+        code.place(end);
+        return Kind.BOOLEAN;
+    }
+
+    private void deoptimize() {
+        code.aload(0);
+        code.invoke(INVOKEVIRTUAL, BASE, "deoptimize", "()Ljava/lang/RuntimeException;");
+        code.op(ATHROW, -1);
+    }
+
+    private int token(Token token) {
+        tokens.add(token);
+        return tokens.size() - 1;
+    }
+}
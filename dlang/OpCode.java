@@ -0,0 +1,61 @@
+package dlang;
+
+// instruction set of the VM, operands follow the opcode in the code array
+final class OpCode {
+    private OpCode() {
+    }
+
+    static final int CONSTANT = 0;          // constant
+    static final int NIL = 1;
+    static final int TRUE = 2;
+    static final int FALSE = 3;
+    static final int POP = 4;
+
+    static final int DEFINE_LOCAL = 5;      // slot
+    static final int DEFINE_GLOBAL = 6;     // slot
+    static final int GET_LOCAL = 7;         // distance, slot
+    static final int SET_LOCAL = 8;         // distance, slot
+    static final int GET_GLOBAL = 9;        // slot, name
+    static final int SET_GLOBAL = 10;       // slot, name
+    static final int GET_ELEMENT_LOCAL = 11;// distance, slot, name
+    static final int GET_ELEMENT_GLOBAL = 12;// slot, name
+    static final int SET_ELEMENT_LOCAL = 13;// distance, slot, name
+    static final int SET_ELEMENT_GLOBAL = 14;// slot, name
+
+    static final int ARRAY = 15;            // element count
+
+    static final int ADD = 16;              // operator
+    static final int SUBTRACT = 17;         // operator
+    static final int MULTIPLY = 18;         // operator
+    static final int DIVIDE = 19;           // operator
+    static final int NEGATE = 20;           // operator
+    static final int NOT = 21;              // operator
+    static final int IS = 22;               // type indicator ordinal
+
+    static final int EQUAL = 23;
+    static final int NOT_EQUAL = 24;
+    static final int GREATER = 25;          // operator
+    static final int GREATER_EQUAL = 26;    // operator
+    static final int LESS = 27;             // operator
+    static final int LESS_EQUAL = 28;       // operator
+
+    static final int AND = 29;
+    static final int OR = 30;
+    static final int XOR = 31;
+
+    static final int JUMP = 32;             // target
+    static final int JUMP_IF_FALSE = 33;    // target
+    static final int FOR_PREP = 34;         // operator, exit target
+    static final int FOR_NEXT = 35;         // operator, body target
+
+    static final int ENTER_SCOPE = 36;      // slot count
+    static final int EXIT_SCOPE = 37;
+
+    static final int PRINT = 38;
+    static final int READ = 39;             // read token
+
+    static final int CLOSURE = 40;          // chunk
+    static final int CALL = 41;             // argument count, operator
+    static final int TAIL_CALL = 42;        // argument count, operator
+    static final int RETURN = 43;
+}
@@ -0,0 +1,257 @@
+package dlang;
+
+// operator semantics shared by the tree-walking Interpreter and the VM
+final class Operators {
+    private Operators() {
+    }
+
+    static Object add(Token operator, Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return add(operator, (long) left, (long) right);
+        }
+
+        if (left instanceof Number && right instanceof Number) {
+            return real(left) + real(right);
+        }
+
+        if (left instanceof String && right instanceof String) {
+            return (String) left + (String) right;
+        }
+
+        if (left instanceof DArray && right instanceof DArray) {
+            return ((DArray) left).concat((DArray) right);
+        }
+
+        throw new RuntimeError(operator,
+                "Operands must be two numbers or two strings.");
+    }
+
+    static Object subtract(Token operator, Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return subtract(operator, (long) left, (long) right);
+        }
+
+        checkNumberOperands(operator, left, right);
+        return real(left) - real(right);
+    }
+
+    static Object multiply(Token operator, Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return multiply(operator, (long) left, (long) right);
+        }
+
+        checkNumberOperands(operator, left, right);
+        return real(left) * real(right);
+    }
+
+    // integer division truncates, dividing reals follows IEEE 754
+    static Object divide(Token operator, Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return divide(operator, (long) left, (long) right);
+        }
+
+        checkNumberOperands(operator, left, right);
+        return real(left) / real(right);
+    }
+
+    static long add(Token operator, long left, long right) {
+        try {
+            return Math.addExact(left, right);
+        } catch (ArithmeticException e) {
+            throw overflow(operator);
+        }
+    }
+
+    static long subtract(Token operator, long left, long right) {
+        try {
+            return Math.subtractExact(left, right);
+        } catch (ArithmeticException e) {
+            throw overflow(operator);
+        }
+    }
+
+    static long multiply(Token operator, long left, long right) {
+        try {
+            return Math.multiplyExact(left, right);
+        } catch (ArithmeticException e) {
+            throw overflow(operator);
+        }
+    }
+
+    static long divide(Token operator, long left, long right) {
+        if (right == 0) {
+            throw new RuntimeError(operator, "Division by zero.");
+        }
+        if (right == -1) {
+            try {
+                return Math.negateExact(left);
+            } catch (ArithmeticException e) {
+                throw overflow(operator);
+            }
+        }
+        return left / right;
+    }
+
+    static Object element(Token name, Object array, Object index) {
+        if (!(array instanceof DArray)) {
+            throw new RuntimeError(name, "Operand must be an array.");
+        }
+
+        DArray elements = (DArray) array;
+        return elements.get(position(name, elements, index));
+    }
+
+    static void setElement(Token name, Object array, Object index, Object value) {
+        if (!(array instanceof DArray)) {
+            throw new RuntimeError(name, "Operand must be an array.");
+        }
+
+        DArray elements = (DArray) array;
+        elements.set(position(name, elements, index), value);
+    }
+
+    // zero-based position of a one-based index
+    private static int position(Token name, DArray array, Object index) {
+        if (!(index instanceof Long)) {
+            if (index instanceof Double) {
+                throw new RuntimeError(name, "Index of type double");
+            }
+            throw new RuntimeError(name, "Operand must be a number.");
+        }
+
+        long position = (long) index - 1;
+        if (position < 0 || position >= array.size()) {
+            throw new RuntimeError(name, "Index out of bounds error");
+        }
+        return (int) position;
+    }
+
+    static boolean greater(Token operator, Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return (long) left > (long) right;
+        }
+
+        checkNumberOperands(operator, left, right);
+        return real(left) > real(right);
+    }
+
+    static boolean greaterEqual(Token operator, Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return (long) left >= (long) right;
+        }
+
+        checkNumberOperands(operator, left, right);
+        return real(left) >= real(right);
+    }
+
+    static boolean less(Token operator, Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return (long) left < (long) right;
+        }
+
+        checkNumberOperands(operator, left, right);
+        return real(left) < real(right);
+    }
+
+    static boolean lessEqual(Token operator, Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return (long) left <= (long) right;
+        }
+
+        checkNumberOperands(operator, left, right);
+        return real(left) <= real(right);
+    }
+
+    // unary plus and minus both negate
+    static Object negate(Token operator, Object left) {
+        if (left instanceof Long) {
+            return negate(operator, (long) left);
+        }
+        if (left instanceof Double) {
+            return -(Double) left;
+        }
+        throw new RuntimeError(operator, "Incorrect operand for MINUS.");
+    }
+
+    static long negate(Token operator, long left) {
+        try {
+            return Math.negateExact(left);
+        } catch (ArithmeticException e) {
+            throw overflow(operator);
+        }
+    }
+
+    static Object not(Token operator, Object left) {
+        if (left instanceof Boolean) {
+            return !(Boolean) left;
+        }
+        throw new RuntimeError(operator, "Incorrect operand for NOT.");
+    }
+
+    static boolean is(Object left, TypeIndicator type) {
+        switch (type) {
+            case INT:
+                return left instanceof Long;
+            case BOOL:
+                return left instanceof Boolean;
+            case FUNC:
+                return left instanceof DFunction;
+            case REAL:
+                return left instanceof Double;
+            //TODO
+            case ARRAY:
+                return false;
+            case TUPLE:
+                return false;
+            case STRING:
+                return left instanceof String;
+            default:
+                return isEqual(left, null);
+        }
+    }
+
+    static void checkNumberOperands(Token operator,
+                                    Object left, Object right) {
+        if (left instanceof Number && right instanceof Number) return;
+
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    private static double real(Object number) {
+        return ((Number) number).doubleValue();
+    }
+
+    private static RuntimeError overflow(Token operator) {
+        return new RuntimeError(operator, "Integer overflow.");
+    }
+
+    static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean) object;
+        return true;
+    }
+
+    static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null) return true;
+        if (a == null) return false;
+        if (a instanceof Number && b instanceof Number && a.getClass() != b.getClass()) {
+            return real(a) == real(b);
+        }
+
+        return a.equals(b);
+    }
+
+    static String stringify(Object object) {
+        if (object == null) return "nil";
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+
+        return object.toString();
+    }
+}
@@ -0,0 +1,421 @@
+package dlang;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// runs between Resolver and execution: folds operators whose operands are literals and drops
+// if branches that can never run and empty bodies. Folding goes through Operators, so a folded
+// value is exactly what the engines would compute; an operation that would fail is kept to fail
+// at runtime. Each visit returns the optimized node, and leaves its node count in size. Nodes are
+// never changed: a node with an optimized child is a new node, so the tree that went in is intact
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    private int removed = 0;
+    private int size = 0;
+
+    Optimizer() {
+    }
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        return optimizeAll(statements);
+    }
+
+    // syntax tree nodes the optimizations removed so far
+    int removed() {
+        return removed;
+    }
+
+    // optimized statements with the ones that do nothing left out, size counts all of them
+    private List<Stmt> optimizeAll(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>(statements.size());
+        int total = 0;
+        for (Stmt statement : statements) {
+            Stmt optimized = optimize(statement);
+            if (optimized == null) continue;
+            if (optimized instanceof Stmt.Body && ((Stmt.Body) optimized).statements.isEmpty()) {
+                removed += size;
+                continue;
+            }
+            result.add(optimized);
+            total += size;
+        }
+        size = total;
+        return result;
+    }
+
+    // optimized expressions, the same list when none of them changed; size counts all of them
+    private List<Expr> optimizeEach(List<Expr> exprs) {
+        List<Expr> result = new ArrayList<>(exprs.size());
+        boolean changed = false;
+        int total = 0;
+        for (Expr expr : exprs) {
+            Expr optimized = optimize(expr);
+            changed |= optimized != expr;
+            result.add(optimized);
+            total += size;
+        }
+        size = total;
+        return changed ? result : exprs;
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public Stmt visitBodyStmt(Stmt.Body stmt) {
+        Stmt.Body body = new Stmt.Body(optimizeAll(stmt.statements));
+        body.slots = stmt.slots;
+        size += 1;
+        return body;
+    }
+
+    @Override
+    public Stmt visitAssignmentStmt(Stmt.Assignment stmt) {
+        Expr left = optimize(stmt.left);
+        int total = 1 + size;
+        Expr right = optimize(stmt.right);
+        size += total;
+
+        if (left == stmt.left && right == stmt.right) return stmt;
+        return new Stmt.Assignment(left, right);
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        int conditionSize = size;
+        Stmt thenBranch = optimize(stmt.thenBranch);
+        int thenSize = size;
+        Stmt elseBranch = null;
+        int elseSize = 0;
+        if (stmt.elseBranch != null) {
+            elseBranch = optimize(stmt.elseBranch);
+            elseSize = size;
+            if (elseBranch instanceof Stmt.Body && ((Stmt.Body) elseBranch).statements.isEmpty()) {
+                removed += elseSize;
+                elseBranch = null;
+                elseSize = 0;
+            }
+        }
+
+        if (isConstant(condition)) {
+            // only one branch can ever run, it takes the place of the if
+            removed += 1 + conditionSize;
+            if (Operators.isTruthy(((Expr.Literal) condition).value)) {
+                removed += elseSize;
+                size = thenSize;
+                return thenBranch;
+            }
+            removed += thenSize;
+            size = elseSize;
+            return elseBranch;
+        }
+
+        size = 1 + conditionSize + thenSize + elseSize;
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch) {
+            return stmt;
+        }
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        Expr expression = optimize(stmt.expression);
+        size += 1;
+        return expression == stmt.expression ? stmt : new Stmt.Print(expression);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) {
+            size = 1;
+            return stmt;
+        }
+
+        Expr value = optimize(stmt.value);
+        size += 1;
+        if (value == stmt.value) return stmt;
+
+        // the call may be a new node too, so it is looked up in the new value
+        Stmt.Return result = new Stmt.Return(stmt.keyword, value);
+        if (stmt.tailCall != null) result.tailCall = Resolver.call(value);
+        return result;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        int total = 1;
+        boolean changed = false;
+        List<Stmt.Var.VarDecl> varDecls = new ArrayList<>(stmt.varDecls.size());
+        for (Stmt.Var.VarDecl varDecl : stmt.varDecls) {
+            if (varDecl.initializer == null) {
+                varDecls.add(varDecl);
+                continue;
+            }
+
+            Expr initializer = optimize(varDecl.initializer);
+            total += size;
+            if (initializer == varDecl.initializer) {
+                varDecls.add(varDecl);
+                continue;
+            }
+            Stmt.Var.VarDecl optimized = new Stmt.Var.VarDecl(varDecl.name, initializer);
+            optimized.slot = varDecl.slot;
+            optimized.global = varDecl.global;
+            varDecls.add(optimized);
+            changed = true;
+        }
+        size = total;
+        return changed ? new Stmt.Var(varDecls) : stmt;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        int conditionSize = size;
+        Stmt body = optimize(stmt.body);
+
+        if (isConstant(condition) && !Operators.isTruthy(((Expr.Literal) condition).value)) {
+            removed += 1 + conditionSize + size;
+            return null;
+        }
+
+        size += 1 + conditionSize;
+        if (condition == stmt.condition && body == stmt.body) return stmt;
+        return new Stmt.While(condition, body);
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        Expr from = optimize(stmt.from);
+        int total = 1 + size;
+        Expr to = optimize(stmt.to);
+        total += size;
+        Stmt body = optimize(stmt.body);
+        size += total;
+
+        if (from == stmt.from && to == stmt.to && body == stmt.body) return stmt;
+        Stmt.For loop = new Stmt.For(stmt.name, from, to, body);
+        loop.counterAssigned = stmt.counterAssigned;
+        return loop;
+    }
+
+    @Override
+    public Stmt visitReferenceStmt(Stmt.Reference stmt) {
+        Expr reference = optimize(stmt.reference);
+        size += 1;
+        return reference == stmt.reference ? stmt : new Stmt.Reference(reference);
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        int leftSize = size;
+        Expr right = optimize(expr.right);
+        int rightSize = size;
+
+        if (isConstant(left) && isConstant(right)) {
+            boolean a = Operators.isTruthy(((Expr.Literal) left).value);
+            boolean b = Operators.isTruthy(((Expr.Literal) right).value);
+            switch (expr.operator.type) {
+                case OR:
+                    return fold(a || b, leftSize + rightSize);
+                case AND:
+                    return fold(a && b, leftSize + rightSize);
+                case XOR:
+                    return fold(a ^ b, leftSize + rightSize);
+            }
+        }
+
+        size = 1 + leftSize + rightSize;
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitRelationExpr(Expr.Relation expr) {
+        Expr left = optimize(expr.left);
+        int leftSize = size;
+        Expr right = optimize(expr.right);
+        int rightSize = size;
+
+        Expr folded = foldBinary(expr.operator, left, leftSize, right, rightSize);
+        if (folded != null) return folded;
+
+        size = 1 + leftSize + rightSize;
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Relation(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitFactorExpr(Expr.Factor expr) {
+        Expr left = optimize(expr.left);
+        int leftSize = size;
+        Expr right = optimize(expr.right);
+        int rightSize = size;
+
+        Expr folded = foldBinary(expr.operator, left, leftSize, right, rightSize);
+        if (folded != null) return folded;
+
+        size = 1 + leftSize + rightSize;
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Factor(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitTermExpr(Expr.Term expr) {
+        Expr left = optimize(expr.left);
+        int leftSize = size;
+        Expr right = optimize(expr.right);
+        int rightSize = size;
+
+        Expr folded = foldBinary(expr.operator, left, leftSize, right, rightSize);
+        if (folded != null) return folded;
+
+        size = 1 + leftSize + rightSize;
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Term(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr left = optimize(expr.left);
+        int leftSize = size;
+
+        if (expr.operator == null) {
+            // nothing to apply, the operand can stand for itself
+            removed += 1;
+            return left;
+        }
+
+        if (isConstant(left)) {
+            Object value = ((Expr.Literal) left).value;
+            try {
+                switch (expr.operator.type) {
+                    case IS:
+                        return fold(Operators.is(value, expr.type), leftSize);
+                    case PLUS:
+                    case MINUS:
+                        return fold(Operators.negate(expr.operator, value), leftSize);
+                    case NOT:
+                        return fold(Operators.not(expr.operator, value), leftSize);
+                }
+            } catch (RuntimeError error) {
+                // keep the operation, so it fails when it runs
+            }
+        }
+
+        size = 1 + leftSize;
+        if (left == expr.left) return expr;
+        return new Expr.Unary(left, expr.operator, expr.type);
+    }
+
+    @Override
+    public Expr visitReferenceExpr(Expr.Reference expr) {
+        Expr left = optimize(expr.left);
+        int total = 1 + size;
+        List<Expr> exprList = expr.exprList == null ? null : optimizeEach(expr.exprList);
+        size += total;
+
+        if (left == expr.left && exprList == expr.exprList) return expr;
+        return new Expr.Reference(left, expr.operator, exprList, expr.identifier);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr expression = optimize(expr.expression);
+        removed += 1;
+        return expression;
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        if (!(expr.value instanceof List)) {
+            size = 1;
+            return expr;
+        }
+
+        List<Expr> elements = (List<Expr>) expr.value;
+        List<Expr> optimized = optimizeEach(elements);
+        size += 1;
+        return optimized == elements ? expr : new Expr.Literal(optimized);
+    }
+
+    @Override
+    public Expr visitFunctionLiteralExpr(Expr.FunctionLiteral expr) {
+        Expr.FunctionLiteral function = new Expr.FunctionLiteral(expr.params, optimizeAll(expr.body));
+        function.slots = expr.slots;
+        function.hasClosures = expr.hasClosures;
+        size += 1;
+        return function;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        size = 1;
+        return expr;
+    }
+
+    @Override
+    public Expr visitArrayElementExpr(Expr.ArrayElement expr) {
+        Expr index = optimize(expr.index);
+        size += 2;
+        if (index == expr.index) return expr;
+        return new Expr.ArrayElement(expr.array, index);
+    }
+
+    @Override
+    public Expr visitReadExpr(Expr.Read expr) {
+        size = 1;
+        return expr;
+    }
+
+    private Expr foldBinary(Token operator, Expr left, int leftSize, Expr right, int rightSize) {
+        if (!isConstant(left) || !isConstant(right)) return null;
+
+        Object a = ((Expr.Literal) left).value;
+        Object b = ((Expr.Literal) right).value;
+        try {
+            switch (operator.type) {
+                case PLUS:
+                    return fold(Operators.add(operator, a, b), leftSize + rightSize);
+                case MINUS:
+                    return fold(Operators.subtract(operator, a, b), leftSize + rightSize);
+                case STAR:
+                    return fold(Operators.multiply(operator, a, b), leftSize + rightSize);
+                case SLASH:
+                    return fold(Operators.divide(operator, a, b), leftSize + rightSize);
+                case EQUAL:
+                    return fold(Operators.isEqual(a, b), leftSize + rightSize);
+                case NOT_EQUAL:
+                    return fold(!Operators.isEqual(a, b), leftSize + rightSize);
+                case GREATER:
+                    return fold(Operators.greater(operator, a, b), leftSize + rightSize);
+                case GREATER_EQUAL:
+                    return fold(Operators.greaterEqual(operator, a, b), leftSize + rightSize);
+                case LESS:
+                    return fold(Operators.less(operator, a, b), leftSize + rightSize);
+                case LESS_EQUAL:
+                    return fold(Operators.lessEqual(operator, a, b), leftSize + rightSize);
+            }
+        } catch (RuntimeError error) {
+            // e.g. a division by zero, which has to be reported when it runs
+        }
+        return null;
+    }
+
+    // a literal replaces an operator node together with its operands
+    private Expr fold(Object value, int operandsSize) {
+        removed += operandsSize;
+        size = 1;
+        return new Expr.Literal(value);
+    }
+
+    private static boolean isConstant(Expr expr) {
+        return expr instanceof Expr.Literal && !(((Expr.Literal) expr).value instanceof List);
+    }
+}
@@ -0,0 +1,30 @@
+package dlang;
+
+import java.io.PrintStream;
+
+// sink for the lines a script prints; it collects them in an unsynchronized buffer and
+// writes them to the stream in large chunks instead of flushing on every print
+final class Output {
+    // buffered characters before they are written out
+    private static final int LIMIT = Integer.getInteger("dlang.output.buffer", 1 << 16);
+
+    private final PrintStream target;
+    private final StringBuilder buffer = new StringBuilder();
+
+    Output(PrintStream target) {
+        this.target = target;
+    }
+
+    void println(String line) {
+        buffer.append(line).append(System.lineSeparator());
+        if (buffer.length() >= LIMIT) flush();
+    }
+
+    void flush() {
+        if (buffer.length() > 0) {
+            target.append(buffer);
+            buffer.setLength(0);
+        }
+        target.flush();
+    }
+}
@@ -1,7 +1,7 @@
 package dlang;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import static dlang.TokenType.*;
@@ -10,11 +10,20 @@ class Parser {
     private static class ParseError extends RuntimeException {
     }
 
-    private final List<Token> tokens;
-    private int current = 0;
+    // tokens are pulled on demand, the parser only ever looks one token ahead
+    private final Iterator<Token> tokens;
+    private Token current;
+    private Token previous;
+    private final ErrorReporter errors;
 
-    Parser(List<Token> tokens) {
+    Parser(Iterator<Token> tokens, ErrorReporter errors) {
         this.tokens = tokens;
+        this.errors = errors;
+        this.current = tokens.next();
+    }
+
+    Parser(List<Token> tokens, ErrorReporter errors) {
+        this(tokens.iterator(), errors);
     }
 
     List<Stmt> parse() {
@@ -43,24 +52,15 @@ class Parser {
     }
 
     private Stmt forStatement() {
-        Stmt.Var initializer = (Stmt.Var) varDeclaration();
-        if (initializer.varDecls.size() != 1) {
-            throw error(peek(), "Wrong number of arguments in a loop.");
-        }
-        Stmt increment = assignment();
-
-        Expr condition = expression();
-        List<Stmt> loopBody = body();
-        loopBody.add(increment);
-        Stmt body = new Stmt.Body(loopBody);
-
-        if (condition == null) condition = new Expr.Literal(true);
-        body = new Stmt.While(condition, body);
-
-        body = new Stmt.Body(Arrays.asList(initializer, body));
+        Token name = consume(IDENTIFIER, "Expect variable name.");
+        consume(IN, "Expect 'in' after loop variable.");
+        Expr from = expression();
+        consume(DOUBLE_DOT, "Expect '..' in loop range.");
+        Expr to = expression();
+        Stmt body = new Stmt.Body(body());
         consume(END, "Expected 'end' in the end of for.");
         consume(SEMICOLON, "Expect ';' loop end.");
-        return body;
+        return new Stmt.For(name, from, to, body);
     }
 
     private Stmt ifStatement() {
@@ -202,9 +202,11 @@ class Parser {
 
     private Expr array() {
         List<Expr> values = new ArrayList<>();
-        do {
-            values.add(expression());
-        } while (match(COMMA));
+        if (!check(RIGHT_BRACKET)) {
+            do {
+                values.add(expression());
+            } while (match(COMMA));
+        }
         consume(RIGHT_BRACKET, "Expected ']' at the end of array.");
         return new Expr.Literal(values);
     }
@@ -322,7 +324,7 @@ class Parser {
             } else {
                 Expr index = expression();
                 consume(TokenType.RIGHT_BRACKET, "Expected '].'");
-                return new Expr.ArrayElement(new Expr.Variable(identifier).name, index);
+                return new Expr.ArrayElement(new Expr.Variable(identifier), index);
             }
             return reference(expr);
         } else {
@@ -413,7 +415,10 @@ class Parser {
     }
 
     private Token advance() {
-        if (!isAtEnd()) current++;
+        if (!isAtEnd()) {
+            previous = current;
+            current = tokens.next();
+        }
         return previous();
     }
 
@@ -422,15 +427,15 @@ class Parser {
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return current;
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return previous;
     }
 
     private ParseError error(Token token, String message) {
-        DLang.error(token, message);
+        errors.error(token, message);
         return new ParseError();
     }
 
@@ -0,0 +1,64 @@
+package dlang;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+// interactive session: one engine, one set of globals and one Resolver live across all inputs,
+// so what a line defines stays defined. Only the statements of the new input are resolved and
+// run; input that stops inside a statement, like a func before its end, continues on the next
+// line and just that pending input is parsed again
+class Repl {
+    private final boolean treeWalker;
+    private final ErrorReporter errors = new ErrorReporter(System.err);
+    private final Resolver resolver = new Resolver(errors);
+    private final Interpreter interpreter;
+    private final VM vm;
+
+    Repl(boolean treeWalker, Input in, Output out) {
+        this.treeWalker = treeWalker;
+        this.interpreter = treeWalker ? new Interpreter(in, out, errors) : null;
+        this.vm = treeWalker ? null : new VM(in, out, errors);
+    }
+
+    void run(BufferedReader reader) throws IOException {
+        StringBuilder pending = new StringBuilder();
+        for (;;) {
+            System.out.print(pending.length() == 0 ? "> " : "... ");
+            String line = reader.readLine();
+            if (line == null) return;
+
+            // an empty line ends a continued input even when it is still incomplete
+            boolean force = line.trim().isEmpty();
+            if (force && pending.length() == 0) continue;
+            pending.append(line).append('\n');
+
+            ByteArrayOutputStream messages = new ByteArrayOutputStream();
+            ErrorReporter parseErrors = new ErrorReporter(new PrintStream(messages, true));
+            List<Stmt> statements = new Parser(new Scanner(pending.toString(), parseErrors), parseErrors).parse();
+            if (parseErrors.hadErrorAtEnd && !force) continue;
+
+            pending.setLength(0);
+            if (parseErrors.hadError) {
+                System.err.print(messages);
+                continue;
+            }
+            execute(statements);
+        }
+    }
+
+    private void execute(List<Stmt> statements) {
+        errors.hadError = false;
+        resolver.resolve(statements);
+        if (errors.hadError) return;
+
+        statements = new Optimizer().optimize(statements);
+        if (treeWalker) {
+            interpreter.interpret(statements);
+        } else {
+            vm.interpret(new Compiler().compile(statements));
+        }
+    }
+}
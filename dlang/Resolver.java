@@ -8,12 +8,25 @@ import java.util.Stack;
 
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
-  private final Interpreter interpreter;
-  private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+  private static class Local {
+    final int slot;
+    boolean defined = false;
+    boolean assigned = false;
 
+    Local(int slot) {
+      this.slot = slot;
+    }
+  }
+
+  private final Stack<Map<String, Local>> scopes = new Stack<>();
+  // slots of the global names of the program, numbered in the order they are met
+  private final Map<String, Integer> globals = new HashMap<>();
+  private Expr.FunctionLiteral currentFunction = null;
+  private final ErrorReporter errors;
 
-  Resolver(Interpreter interpreter) {
-    this.interpreter = interpreter;
+
+  Resolver(ErrorReporter errors) {
+    this.errors = errors;
   }
 
   void resolve(List<Stmt> statements) {
@@ -22,11 +35,16 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
   }
 
+  // global slots of everything resolved so far, a run's global environment is indexed by them
+  Map<String, Integer> globals() {
+    return globals;
+  }
+
   @Override
   public Void visitBodyStmt(Stmt.Body stmt) {
     beginScope();
     resolve(stmt.statements);
-    endScope();
+    stmt.slots = endScope();
     return null;
   }
 
@@ -34,6 +52,10 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   public Void visitAssignmentStmt(Stmt.Assignment stmt) {
     resolve(stmt.left);
     resolve(stmt.right);
+    if (stmt.left instanceof Expr.Variable) {
+      Local local = lookUp(((Expr.Variable) stmt.left).name);
+      if (local != null) local.assigned = true;
+    }
     return null;
   }
 
@@ -59,6 +81,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   public Void visitReturnStmt(Stmt.Return stmt) {
     if (stmt.value != null) {
       resolve(stmt.value);
+      if (currentFunction != null) stmt.tailCall = call(stmt.value);
     }
 
     return null;
@@ -66,7 +89,12 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitVarStmt(Stmt.Var stmt) {
     for(Stmt.Var.VarDecl varDecl : stmt.varDecls) {
-      declare(varDecl.name);
+      if (scopes.isEmpty()) {
+        varDecl.global = true;
+        varDecl.slot = globalSlot(varDecl.name.lexeme);
+      } else {
+        varDecl.slot = declare(varDecl.name);
+      }
       if (varDecl.initializer != null) {
         resolve(varDecl.initializer);
       }
@@ -81,6 +109,23 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     return null;
   }
 
+  @Override
+  public Void visitForStmt(Stmt.For stmt) {
+    resolve(stmt.from);
+    resolve(stmt.to);
+
+    // the loop variable lives in a scope of its own around the body
+    beginScope();
+    declare(stmt.name);
+    define(stmt.name);
+    Local counter = scopes.peek().get(stmt.name.lexeme);
+    resolve(stmt.body);
+    endScope();
+
+    stmt.counterAssigned = counter.assigned;
+    return null;
+  }
+
   @Override
   public Void visitReferenceStmt(Stmt.Reference stmt) {
     resolve(stmt.reference);
@@ -94,18 +139,29 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   }
   @Override
   public Void visitLiteralExpr(Expr.Literal expr) {
+    if (expr.value instanceof List) {
+      for (Expr element : (List<Expr>) expr.value) {
+        resolve(element);
+      }
+    }
     return null;
   }
 
   @Override
   public Void visitFunctionLiteralExpr(Expr.FunctionLiteral expr) {
+    Expr.FunctionLiteral enclosingFunction = currentFunction;
+    if (enclosingFunction != null) enclosingFunction.hasClosures = true;
+    currentFunction = expr;
+
     beginScope();
     for (Token param : expr.params) {
       declare(param);
       define(param);
     }
     resolve(expr.body);
-    endScope();
+    expr.slots = endScope();
+
+    currentFunction = enclosingFunction;
     return null;
   }
 
@@ -155,9 +211,9 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
   @Override
   public Void visitVariableExpr(Expr.Variable expr) {
-    if (!scopes.isEmpty() &&
-        scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-      DLang.error(expr.name,
+    Local local = scopes.isEmpty() ? null : scopes.peek().get(expr.name.lexeme);
+    if (local != null && !local.defined) {
+      errors.error(expr.name,
           "Cannot read local variable in its own initializer.");
     }
 
@@ -167,6 +223,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitArrayElementExpr(Expr.ArrayElement expr) {
+      resolve(expr.array);
       resolve(expr.index);
       return null;
     }
@@ -176,6 +233,25 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    // the call an expression consists of, looking through operator-less unary and grouping
+    static Expr.Reference call(Expr expr) {
+      while (true) {
+        if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator == null) {
+          expr = ((Expr.Unary) expr).left;
+        } else if (expr instanceof Expr.Grouping) {
+          expr = ((Expr.Grouping) expr).expression;
+        } else {
+          break;
+        }
+      }
+
+      if (expr instanceof Expr.Reference &&
+          ((Expr.Reference) expr).operator.type == TokenType.LEFT_PAREN) {
+        return (Expr.Reference) expr;
+      }
+      return null;
+    }
+
     private void resolve(Stmt stmt) {
     stmt.accept(this);
   }
@@ -184,35 +260,67 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   }
 
   private void beginScope() {
-    scopes.push(new HashMap<String, Boolean>());
+    scopes.push(new HashMap<String, Local>());
   }
-  private void endScope() {
-    scopes.pop();
+  // returns the number of slots the scope needs
+  private int endScope() {
+    return scopes.pop().size();
   }
 
-  private void declare(Token name) {
-    if (scopes.isEmpty()) return;
+  private int declare(Token name) {
+    if (scopes.isEmpty()) return -1;
 
-    Map<String, Boolean> scope = scopes.peek();
-    if (scope.containsKey(name.lexeme)) {
-      DLang.error(name,
+    Map<String, Local> scope = scopes.peek();
+    Local local = scope.get(name.lexeme);
+    if (local != null) {
+      errors.error(name,
           "Variable with this name already declared in this scope.");
+      local.defined = false;
+      return local.slot;
     }
 
-    scope.put(name.lexeme, false);
+    local = new Local(scope.size());
+    scope.put(name.lexeme, local);
+    return local.slot;
   }
 
   private void define(Token name) {
     if (scopes.isEmpty()) return;
-    scopes.peek().put(name.lexeme, true);
+    scopes.peek().get(name.lexeme).defined = true;
+  }
+
+  private Local lookUp(Token name) {
+    for (int i = scopes.size() - 1; i >= 0; i--) {
+      Local local = scopes.get(i).get(name.lexeme);
+      if (local != null) return local;
+    }
+    return null;
   }
 
-  private void resolveLocal(Expr expr, Token name) {
+  private void resolveLocal(Expr.Variable expr, Token name) {
     for (int i = scopes.size() - 1; i >= 0; i--) {
-      if (scopes.get(i).containsKey(name.lexeme)) {
-        interpreter.resolve(expr, scopes.size() - 1 - i);
+      Local local = scopes.get(i).get(name.lexeme);
+      if (local != null) {
+        expr.depth = scopes.size() - 1 - i;
+        expr.slot = local.slot;
         return;
       }
     }
+
+    expr.slot = globalSlot(name.lexeme);
+  }
+
+  private int globalSlot(String name) {
+    return globalSlot(globals, name);
+  }
+
+  // the slot of a global name in a program's table, a new one the first time the name is seen
+  static int globalSlot(Map<String, Integer> globals, String name) {
+    Integer slot = globals.get(name);
+    if (slot == null) {
+      slot = globals.size();
+      globals.put(name, slot);
+    }
+    return slot;
   }
 }
@@ -1,67 +1,105 @@
 package dlang;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 import static dlang.TokenType.*; // [static-import]
 
-class Scanner {
-  private static final Map<String, TokenType> keywords;
-
-  static {
-    keywords = new HashMap<>();
-    keywords.put("and",    AND);
-    keywords.put("else",   ELSE);
-    keywords.put("false",  FALSE);
-    keywords.put("for",    FOR);
-    keywords.put("if",     IF);
-    keywords.put("empty",    EMPTY);
-    keywords.put("or",     OR);
-    keywords.put("print",  PRINT);
-    keywords.put("return", RETURN);
-    keywords.put("true",   TRUE);
-    keywords.put("var",    VAR);
-    keywords.put("while",  WHILE);
-    keywords.put("func",    FUNC);
-    keywords.put("not",    NOT);
-    keywords.put("xor",     XOR);
-    keywords.put("int",   INT);
-    keywords.put("real",    REAL);
-    keywords.put("bool",    BOOL);
-    keywords.put("string",  STRING);
-    keywords.put("loop",    LOOP);
-    keywords.put("end",     END);
-    keywords.put("then",    THEN);
-    keywords.put("is",      IS);
-    keywords.put("in",      IN);
-    keywords.put("readInt", READ_INT);
-    keywords.put("readReal",READ_REAL);
-    keywords.put("readString",READ_STRING);
+// pulls characters from a Reader and hands out tokens one at a time, so memory is bounded
+// by the read buffer and the current lexeme rather than by the size of the source
+class Scanner implements Iterator<Token> {
+  // built on the first identifier, not when the class loads
+  private static final class Keywords {
+    static final Map<String, TokenType> keywords = new HashMap<>();
+
+    static {
+      keywords.put("and",    AND);
+      keywords.put("else",   ELSE);
+      keywords.put("false",  FALSE);
+      keywords.put("for",    FOR);
+      keywords.put("if",     IF);
+      keywords.put("empty",    EMPTY);
+      keywords.put("or",     OR);
+      keywords.put("print",  PRINT);
+      keywords.put("return", RETURN);
+      keywords.put("true",   TRUE);
+      keywords.put("var",    VAR);
+      keywords.put("while",  WHILE);
+      keywords.put("func",    FUNC);
+      keywords.put("not",    NOT);
+      keywords.put("xor",     XOR);
+      keywords.put("int",   INT);
+      keywords.put("real",    REAL);
+      keywords.put("bool",    BOOL);
+      keywords.put("string",  STRING);
+      keywords.put("loop",    LOOP);
+      keywords.put("end",     END);
+      keywords.put("then",    THEN);
+      keywords.put("is",      IS);
+      keywords.put("in",      IN);
+      keywords.put("readInt", READ_INT);
+      keywords.put("readReal",READ_REAL);
+      keywords.put("readString",READ_STRING);
+    }
   }
-  private final String source;
-  private final List<Token> tokens = new ArrayList<>();
+  private final Reader source;
+  private final ErrorReporter errors;
+  private final char[] buffer = new char[8192];
+  private int position = 0;
+  private int limit = 0;
 
   // scan states
-  private int start = 0;
-  private int current = 0;
+  private final StringBuilder lexeme = new StringBuilder();
   private int line = 1;
+  private Token next;
+  private boolean finished = false;
+
+  Scanner(String source, ErrorReporter errors){
+
+    this(new StringReader(source), errors);
+  }
 
-  Scanner(String source){
+  Scanner(Reader source, ErrorReporter errors){
 
     this.source = source;
+    this.errors = errors;
   }
   // scan process
   List<Token> scanTokens() {
+    List<Token> tokens = new ArrayList<>();
+    while (hasNext()) {
+      tokens.add(next());
+    }
 
-    while (!isAtEnd()) {
+    return tokens;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !finished;
+  }
+
+  @Override
+  public Token next() {
+    if (finished) throw new NoSuchElementException();
+
+    while (next == null && !isAtEnd()) {
 
       // We are at the beginning of the next lexeme?
-      start = current;
+      lexeme.setLength(0);
       scanToken();
     }
 
-    tokens.add(new Token(EOF, "", null, line));
-    System.out.println((tokens));
-    return tokens;
+    Token token = next;
+    next = null;
+    if (token == null) {
+      token = new Token(EOF, "", null, line);
+      finished = true;
+    }
+    return token;
   }
 
   // token scan
@@ -75,30 +113,7 @@ class Scanner {
       case '[': addToken(LEFT_BRACKET); break;
       case ']': addToken(RIGHT_BRACKET); break;
       case ',': addToken(COMMA); break;
-      case '.':
-        if (match('.')) {
-          Token identifier = getLastTokenByTokenType(IDENTIFIER);
-
-          // if it just double dot, we pass it, but further it will be handled
-          if (identifier == null) {
-            addToken(DOUBLE_DOT);
-            break;
-          }
-
-          // rewrite cycle format
-          String lexeme =  identifier.lexeme;
-          addToken(SEMICOLON, ";", null);
-          addToken(IDENTIFIER, lexeme, null);
-          addToken(ASSIGN, ":=", null);
-          addToken(IDENTIFIER, lexeme, null);
-          addToken(PLUS, "+", null);
-          addToken(NUMBER, "1", 1.0);
-          addToken(SEMICOLON, ";", null);
-          addToken(IDENTIFIER, lexeme, null);
-          addToken(LESS, "<", null);
-        }
-        else addToken(DOT);
-        break;
+      case '.': addToken(match('.') ? DOUBLE_DOT : DOT); break;
       case '-': addToken(MINUS); break;
       case '+': addToken(PLUS); break;
       case ';': addToken(SEMICOLON); break;
@@ -139,7 +154,7 @@ class Scanner {
           identifier();
         }
         else {
-          DLang.error(line, "wrong character");
+          errors.error(line, "wrong character");
         }
         break;
     }
@@ -149,16 +164,10 @@ class Scanner {
     while (isAlphabetOrNumeric(peek())) advance();
 
     // check reserved word
-    String text = source.substring(start, current);
-    TokenType type = keywords.get(text);
-    // for cycle format
-    if (type == IN) {
-      addToken(ASSIGN, ":=", null);
-    }
-    else {
-      if (type == null) type = IDENTIFIER;
-      addToken(type);
-    }
+    String text = lexeme.toString();
+    TokenType type = Keywords.keywords.get(text);
+    if (type == null) type = IDENTIFIER;
+    addToken(type);
   }
 
   private void number() {
@@ -170,10 +179,17 @@ class Scanner {
       advance();
 
       while (isDigit(peek())) advance();
+
+      addToken(NUMBER,
+              Double.parseDouble(lexeme.toString()));
+      return;
     }
 
-    addToken(NUMBER,
-            Double.parseDouble(source.substring(start, current)));
+    try {
+      addToken(NUMBER, Long.parseLong(lexeme.toString()));
+    } catch (NumberFormatException e) {
+      errors.error(line, "Integer literal is too large");
+    }
   }
 
   private void string() {
@@ -184,7 +200,7 @@ class Scanner {
 
     // incomplete string
     if (isAtEnd()) {
-      DLang.error(line, "Incomplete string");
+      errors.error(line, "Incomplete string");
       return;
     }
 
@@ -192,26 +208,26 @@ class Scanner {
     advance();
 
     // delete ""
-    String value = source.substring(start + 1, current - 1);
+    String value = lexeme.substring(1, lexeme.length() - 1);
     addToken(STRING_LITERAL, value);
   }
 
   private boolean match(char expected) {
     if (isAtEnd()) return false;
-    if (source.charAt(current) != expected) return false;
+    if (buffer[position] != expected) return false;
 
-    current++;
+    advance();
     return true;
   }
 
   private char peek() {
     if (isAtEnd()) return '\0';
-    return source.charAt(current);
+    return buffer[position];
   }
 
   private char peekNext() {
-    if (current + 1 >= source.length()) return '\0';
-    return source.charAt(current + 1);
+    if (!fill(2)) return '\0';
+    return buffer[position + 1];
   }
 
   private boolean isAlphabet(char c) {
@@ -229,13 +245,34 @@ class Scanner {
   }
 
   private boolean isAtEnd() {
-    return current >= source.length();
+    return !fill(1);
+  }
+
+  // make sure at least count characters are buffered, false at the end of the source
+  private boolean fill(int count) {
+    if (limit - position >= count) return true;
+
+    System.arraycopy(buffer, position, buffer, 0, limit - position);
+    limit -= position;
+    position = 0;
+    try {
+      while (limit < count) {
+        int read = source.read(buffer, limit, buffer.length - limit);
+        if (read < 0) return false;
+        limit += read;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return true;
   }
 
   // move pointer to next and return current
   private char advance() {
-    current++;
-    return source.charAt(current - 1);
+    fill(1);
+    char c = buffer[position++];
+    lexeme.append(c);
+    return c;
   }
 
   private void addToken(TokenType type) {
@@ -243,20 +280,6 @@ class Scanner {
   }
 
   private void addToken(TokenType type, Object literal) {
-    String text = source.substring(start, current);
-    tokens.add(new Token(type, text, literal, line));
-  }
-
-  private void addToken(TokenType type, String lexeme, Object literal) {
-    tokens.add(new Token(type, lexeme, literal, line));
-  }
-
-  private Token getLastTokenByTokenType(TokenType type) {
-    List<Token> reversed = new ArrayList<>(tokens);
-    Collections.reverse(reversed);
-    for (Token token : reversed) {
-      if (token.type == type) return token;
-    }
-    return null;
+    next = new Token(type, lexeme.toString(), literal, line);
   }
 }
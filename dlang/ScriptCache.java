@@ -0,0 +1,86 @@
+package dlang;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+// keeps the resolved and optimized program of each script in -Ddlang.cache=<dir>, in a file
+// named after a hash of the script's content, so starting the same script again only has to
+// map that file and read the trees back
+class ScriptCache {
+    private static final String DIRECTORY = System.getProperty("dlang.cache");
+
+    private final Path entry;
+
+    private ScriptCache(Path entry) {
+        this.entry = entry;
+    }
+
+    // the cache entry for a script, null when caching is turned off or the script can't be hashed
+    static ScriptCache of(Path script) {
+        if (DIRECTORY == null) return null;
+        try {
+            return new ScriptCache(Paths.get(DIRECTORY, hash(script) + ".dlc"));
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // the cached program, null when there is none or it can't be read
+    List<Stmt> load() {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new AstReader(bytes).read();
+        } catch (IOException | RuntimeException e) {
+            // missing, or written by another version of the format, Resolver or Optimizer,
+            // so the front end runs again and the entry is replaced
+            return null;
+        }
+    }
+
+    void store(List<Stmt> statements) {
+        byte[] bytes = new AstWriter().write(statements);
+        try {
+            Files.createDirectories(entry.getParent());
+            // concurrent runs of the same script must never see a half written entry
+            Path temporary = Files.createTempFile(entry.getParent(), "dlang", ".tmp");
+            try {
+                Files.write(temporary, bytes);
+                Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // the cache only saves time, a run doesn't fail because of it
+        }
+    }
+
+    private static String hash(Path script) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        try (FileChannel channel = FileChannel.open(script, StandardOpenOption.READ)) {
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            digest.update(bytes);
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
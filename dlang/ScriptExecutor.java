@@ -0,0 +1,60 @@
+package dlang;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// runs many independent scripts concurrently in one JVM. Each run gets its own input,
+// output, error flags, global slots and globals, so runs of different scripts only share
+// the classes JitCompiler generates
+public final class ScriptExecutor implements AutoCloseable {
+    private final ExecutorService executor;
+
+    public ScriptExecutor() {
+        this(newExecutor());
+    }
+
+    public ScriptExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    // runs the script and completes with the status DLang would exit with: 0, or 65 for
+    // compile errors and 70 for runtime errors, which are reported on err
+    public Future<Integer> submit(String source, InputStream in, PrintStream out, PrintStream err) {
+        return executor.submit(() -> run(source, in, out, err));
+    }
+
+    // runs a program compiled once by DLangEngine, with its own globals and streams
+    public Future<Integer> submit(CompiledProgram program, Map<String, ?> bindings,
+                                  InputStream in, PrintStream out, PrintStream err) {
+        return executor.submit(() -> program.run(bindings, in, out, err));
+    }
+
+    private static int run(String source, InputStream in, PrintStream out, PrintStream err) {
+        ErrorReporter errors = new ErrorReporter(err);
+        Output output = new Output(out);
+        List<Stmt> statements = DLang.compile(new StringReader(source), new Resolver(errors), false, errors);
+        if (statements != null) DLang.execute(statements, false, new Input(in), output, errors);
+        return errors.status();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    // a virtual thread per script where the JVM has them, so a script blocked on readInt
+    // doesn't hold on to a carrier thread; otherwise a pool with a thread per core
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
@@ -11,6 +11,7 @@ abstract class Stmt {
     R visitReturnStmt(Return stmt);
     R visitVarStmt(Var stmt);
     R visitWhileStmt(While stmt);
+    R visitForStmt(For stmt);
     R visitReferenceStmt(Reference stmt);
   }
 
@@ -24,6 +25,8 @@ abstract class Stmt {
     }
 
     final List<Stmt> statements;
+    // frame size, set by Resolver
+    int slots = 0;
   }
 
   static class Assignment extends Stmt {
@@ -80,12 +83,17 @@ abstract class Stmt {
 
     final Token keyword;
     final Expr value;
+    // set by Resolver when the returned value is a call made from inside a function
+    Expr.Reference tailCall = null;
   }
 
   static class Var extends Stmt {
     static class VarDecl {
       final Token name;
       final Expr initializer;
+      // slot set by Resolver, a slot of the global environment when global is set
+      int slot = -1;
+      boolean global = false;
 
       VarDecl(Token name, Expr initializer) {
         this.name = name;
@@ -119,6 +127,27 @@ abstract class Stmt {
   }
 
 
+  static class For extends Stmt {
+    For(Token name, Expr from, Expr to, Stmt body) {
+      this.name = name;
+      this.from = from;
+      this.to = to;
+      this.body = body;
+    }
+
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitForStmt(this);
+    }
+
+    // counts name from 'from' up to, but not including, 'to'
+    final Token name;
+    final Expr from;
+    final Expr to;
+    final Stmt body;
+    // set by Resolver when the loop variable is assigned somewhere in the body
+    boolean counterAssigned = false;
+  }
+
   static class Reference extends Stmt {
     Reference(Expr reference) {
       this.reference = reference;
@@ -0,0 +1,440 @@
+package dlang;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+// stack machine running the bytecode produced by Compiler
+class VM {
+    private static final TypeIndicator[] TYPES = TypeIndicator.values();
+
+    private static class Frame {
+        // a tail call replaces the function running in the frame
+        DFunction function;
+        Chunk chunk;
+        Environment environment;
+        final Environment callerEnvironment;
+        int ip = 0;
+
+        Frame(DFunction function, Chunk chunk, Environment environment, Environment callerEnvironment) {
+            this.function = function;
+            this.chunk = chunk;
+            this.environment = environment;
+            this.callerEnvironment = callerEnvironment;
+        }
+    }
+
+    final Environment globals = new Environment();
+
+    private Environment environment = globals;
+    private Object[] stack = new Object[256];
+    private int stackTop = 0;
+    private Frame[] frames = new Frame[64];
+    private int frameCount = 0;
+    // function literals whose compiled code overflowed the JVM stack in this run
+    private final Set<Expr.FunctionLiteral> overflowed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Input in;
+    private final Output out;
+    private final ErrorReporter errors;
+
+    VM() {
+        this(new Input(System.in), new Output(System.out), new ErrorReporter(System.err));
+    }
+
+    VM(Input in, Output out, ErrorReporter errors) {
+        this.in = in;
+        this.out = out;
+        this.errors = errors;
+    }
+
+    void interpret(Chunk script) {
+        try {
+            frames[frameCount++] = new Frame(null, script, globals, environment);
+            run();
+        } catch (RuntimeError error) {
+            // what the script printed goes out before the error
+            out.flush();
+            errors.runtimeError(error);
+        } finally {
+            out.flush();
+            environment = globals;
+            stackTop = 0;
+            frameCount = 0;
+        }
+    }
+
+    private void run() {
+        Frame frame = frames[frameCount - 1];
+        int[] code = frame.chunk.code;
+        Object[] constants = frame.chunk.constants;
+        int ip = frame.ip;
+
+        for (;;) {
+            switch (code[ip++]) {
+                case OpCode.CONSTANT:
+                    push(constants[code[ip++]]);
+                    break;
+                case OpCode.NIL:
+                    push(null);
+                    break;
+                case OpCode.TRUE:
+                    push(true);
+                    break;
+                case OpCode.FALSE:
+                    push(false);
+                    break;
+                case OpCode.POP:
+                    stack[--stackTop] = null;
+                    break;
+
+                case OpCode.DEFINE_LOCAL:
+                    environment.define(code[ip++], peek());
+                    break;
+                case OpCode.DEFINE_GLOBAL:
+                    globals.defineGlobal(code[ip++], peek());
+                    break;
+                case OpCode.GET_LOCAL: {
+                    int distance = code[ip++];
+                    push(environment.getAt(distance, code[ip++]));
+                    break;
+                }
+                case OpCode.SET_LOCAL: {
+                    int distance = code[ip++];
+                    environment.assignAt(distance, code[ip++], pop());
+                    break;
+                }
+                case OpCode.GET_GLOBAL: {
+                    int slot = code[ip++];
+                    push(globals.get(slot, (Token) constants[code[ip++]]));
+                    break;
+                }
+                case OpCode.SET_GLOBAL: {
+                    int slot = code[ip++];
+                    globals.assign(slot, (Token) constants[code[ip++]], pop());
+                    break;
+                }
+                case OpCode.GET_ELEMENT_LOCAL: {
+                    Object array = environment.getAt(code[ip], code[ip + 1]);
+                    Token name = (Token) constants[code[ip + 2]];
+                    ip += 3;
+                    push(Operators.element(name, array, pop()));
+                    break;
+                }
+                case OpCode.GET_ELEMENT_GLOBAL: {
+                    Token name = (Token) constants[code[ip + 1]];
+                    Object array = globals.get(code[ip], name);
+                    ip += 2;
+                    push(Operators.element(name, array, pop()));
+                    break;
+                }
+                case OpCode.SET_ELEMENT_LOCAL: {
+                    Object array = environment.getAt(code[ip], code[ip + 1]);
+                    Token name = (Token) constants[code[ip + 2]];
+                    ip += 3;
+                    Object index = pop();
+                    Operators.setElement(name, array, index, pop());
+                    break;
+                }
+                case OpCode.SET_ELEMENT_GLOBAL: {
+                    Token name = (Token) constants[code[ip + 1]];
+                    Object array = globals.get(code[ip], name);
+                    ip += 2;
+                    Object index = pop();
+                    Operators.setElement(name, array, index, pop());
+                    break;
+                }
+
+                case OpCode.ARRAY: {
+                    int size = code[ip++];
+                    DArray array = DArray.of(stack, stackTop - size, stackTop);
+                    Arrays.fill(stack, stackTop - size, stackTop, null);
+                    stackTop -= size;
+                    push(array);
+                    break;
+                }
+
+                case OpCode.ADD: {
+                    Object right = pop();
+                    Object left = pop();
+                    push(Operators.add((Token) constants[code[ip++]], left, right));
+                    break;
+                }
+                case OpCode.SUBTRACT: {
+                    Object right = pop();
+                    Object left = pop();
+                    push(Operators.subtract((Token) constants[code[ip++]], left, right));
+                    break;
+                }
+                case OpCode.MULTIPLY: {
+                    Object right = pop();
+                    Object left = pop();
+                    push(Operators.multiply((Token) constants[code[ip++]], left, right));
+                    break;
+                }
+                case OpCode.DIVIDE: {
+                    Object right = pop();
+                    Object left = pop();
+                    push(Operators.divide((Token) constants[code[ip++]], left, right));
+                    break;
+                }
+                case OpCode.NEGATE:
+                    push(Operators.negate((Token) constants[code[ip++]], pop()));
+                    break;
+                case OpCode.NOT:
+                    push(Operators.not((Token) constants[code[ip++]], pop()));
+                    break;
+                case OpCode.IS:
+                    push(Operators.is(pop(), TYPES[code[ip++]]));
+                    break;
+
+                case OpCode.EQUAL: {
+                    Object right = pop();
+                    Object left = pop();
+                    push(Operators.isEqual(left, right));
+                    break;
+                }
+                case OpCode.NOT_EQUAL: {
+                    Object right = pop();
+                    Object left = pop();
+                    push(!Operators.isEqual(left, right));
+                    break;
+                }
+                case OpCode.GREATER: {
+                    Object right = pop();
+                    Object left = pop();
+                    push(Operators.greater((Token) constants[code[ip++]], left, right));
+                    break;
+                }
+                case OpCode.GREATER_EQUAL: {
+                    Object right = pop();
+                    Object left = pop();
+                    push(Operators.greaterEqual((Token) constants[code[ip++]], left, right));
+                    break;
+                }
+                case OpCode.LESS: {
+                    Object right = pop();
+                    Object left = pop();
+                    push(Operators.less((Token) constants[code[ip++]], left, right));
+                    break;
+                }
+                case OpCode.LESS_EQUAL: {
+                    Object right = pop();
+                    Object left = pop();
+                    push(Operators.lessEqual((Token) constants[code[ip++]], left, right));
+                    break;
+                }
+
+                case OpCode.AND: {
+                    boolean right = Operators.isTruthy(pop());
+                    boolean left = Operators.isTruthy(pop());
+                    push(left && right);
+                    break;
+                }
+                case OpCode.OR: {
+                    boolean right = Operators.isTruthy(pop());
+                    boolean left = Operators.isTruthy(pop());
+                    push(left || right);
+                    break;
+                }
+                case OpCode.XOR: {
+                    boolean right = Operators.isTruthy(pop());
+                    boolean left = Operators.isTruthy(pop());
+                    push(left ^ right);
+                    break;
+                }
+
+                case OpCode.JUMP:
+                    ip = code[ip];
+                    break;
+                case OpCode.JUMP_IF_FALSE:
+                    if (Operators.isTruthy(pop())) {
+                        ip++;
+                    } else {
+                        ip = code[ip];
+                    }
+                    break;
+
+                case OpCode.FOR_PREP: {
+                    Token name = (Token) constants[code[ip++]];
+                    Object to = pop();
+                    Object from = pop();
+                    environment.define(0, from);
+                    environment.define(1, to);
+                    if (Operators.less(name, from, to)) {
+                        ip++;
+                    } else {
+                        ip = code[ip];
+                    }
+                    break;
+                }
+                case OpCode.FOR_NEXT: {
+                    Token name = (Token) constants[code[ip++]];
+                    Object counter = environment.getAt(0, 0);
+                    Object to = environment.getAt(0, 1);
+                    Object next;
+                    boolean more;
+                    if (counter instanceof Long && to instanceof Long) {
+                        long i = Operators.add(name, (long) counter, 1L);
+                        next = i;
+                        more = i < (long) to;
+                    } else {
+                        next = Operators.add(name, counter, 1L);
+                        more = Operators.less(name, next, to);
+                    }
+                    environment.define(0, next);
+                    if (more) {
+                        ip = code[ip];
+                    } else {
+                        ip++;
+                    }
+                    break;
+                }
+
+                case OpCode.ENTER_SCOPE:
+                    environment = new Environment(environment, code[ip++]);
+                    break;
+                case OpCode.EXIT_SCOPE:
+                    environment = environment.enclosing;
+                    break;
+
+                case OpCode.PRINT:
+                    out.println(Operators.stringify(pop()));
+                    break;
+                case OpCode.READ:
+                    push(read((Token) constants[code[ip++]]));
+                    break;
+
+                case OpCode.CLOSURE:
+                    push(new DFunction((Chunk) constants[code[ip++]], environment));
+                    break;
+                case OpCode.CALL: {
+                    int argCount = code[ip++];
+                    Token operator = (Token) constants[code[ip++]];
+                    DFunction function = callee(argCount, operator);
+
+                    Environment callEnvironment = new Environment(function.closure, function.slots);
+                    bindArguments(callEnvironment, argCount);
+
+                    Object compiled = JitCompiler.run(function, callEnvironment, overflowed);
+                    if (compiled != JitCompiler.INTERPRET) {
+                        push(compiled);
+                        break;
+                    }
+
+                    frame.ip = ip;
+                    frame = new Frame(function, function.chunk, callEnvironment, environment);
+                    if (frameCount == frames.length) {
+                        frames = Arrays.copyOf(frames, frameCount * 2);
+                    }
+                    frames[frameCount++] = frame;
+                    environment = callEnvironment;
+                    code = function.chunk.code;
+                    constants = function.chunk.constants;
+                    ip = 0;
+                    break;
+                }
+                case OpCode.TAIL_CALL: {
+                    int argCount = code[ip++];
+                    Token operator = (Token) constants[code[ip++]];
+                    DFunction function = callee(argCount, operator);
+
+                    // the callee takes over the frame, a self call even its environment
+                    Environment callEnvironment;
+                    if (function == frame.function && function.reusesFrame) {
+                        callEnvironment = frame.environment;
+                        callEnvironment.clear();
+                    } else {
+                        callEnvironment = new Environment(function.closure, function.slots);
+                    }
+                    bindArguments(callEnvironment, argCount);
+
+                    Object compiled = JitCompiler.run(function, callEnvironment, overflowed);
+                    if (compiled == JitCompiler.INTERPRET) {
+                        frame.function = function;
+                        frame.chunk = function.chunk;
+                        frame.environment = callEnvironment;
+                        environment = callEnvironment;
+                        code = function.chunk.code;
+                        constants = function.chunk.constants;
+                        ip = 0;
+                        break;
+                    }
+
+                    // the compiled function already produced the value this frame returns
+                    if (!returnFrom(frame, compiled)) return;
+                    frame = frames[frameCount - 1];
+                    code = frame.chunk.code;
+                    constants = frame.chunk.constants;
+                    ip = frame.ip;
+                    break;
+                }
+                case OpCode.RETURN:
+                    if (!returnFrom(frame, pop())) return;
+                    frame = frames[frameCount - 1];
+                    code = frame.chunk.code;
+                    constants = frame.chunk.constants;
+                    ip = frame.ip;
+                    break;
+            }
+        }
+    }
+
+    // pops the returning frame and hands its result to the caller, false when the script ended
+    private boolean returnFrom(Frame frame, Object result) {
+        environment = frame.callerEnvironment;
+        frames[--frameCount] = null;
+        if (frameCount == 0) return false;
+
+        push(result);
+        return true;
+    }
+
+    private DFunction callee(int argCount, Token operator) {
+        Object callee = stack[stackTop - argCount - 1];
+        if (callee == null) {
+            throw new RuntimeError(operator, "Undefined function.");
+        }
+        if (!(callee instanceof DFunction)) {
+            throw new RuntimeError(operator, "Object not callable.");
+        }
+        DFunction function = (DFunction) callee;
+        if (argCount != function.arity) {
+            throw new RuntimeError(operator, "Incorrect number of parameters.");
+        }
+        return function;
+    }
+
+    // moves the arguments and the callee off the stack into the first slots of the frame
+    private void bindArguments(Environment frame, int argCount) {
+        int base = stackTop - argCount;
+        for (int i = 0; i < argCount; i++) {
+            frame.define(i, stack[base + i]);
+        }
+        Arrays.fill(stack, base - 1, stackTop, null);
+        stackTop = base - 1;
+    }
+
+    private Object read(Token name) {
+        // a prompt printed before the read has to be visible
+        out.flush();
+        return in.read(name);
+    }
+
+    private void push(Object value) {
+        if (stackTop == stack.length) {
+            stack = Arrays.copyOf(stack, stackTop * 2);
+        }
+        stack[stackTop++] = value;
+    }
+
+    private Object pop() {
+        Object value = stack[--stackTop];
+        stack[stackTop] = null;
+        return value;
+    }
+
+    private Object peek() {
+        return stack[stackTop - 1];
+    }
+}